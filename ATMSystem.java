@@ -1,24 +1,31 @@
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 // ATM.java
+// Cash handling goes through the shared AccountLedger.AtmChannel (AccountLedger.java),
+// the same rules BankingSystem's ATM uses; the channel also holds the cash on hand.
 class ATM {
     private String location;
     private int atmId;
-    private float balance;
+    private float initialCash; // Loaded into the channel when the ATM is connected to a bank
+    private AccountLedger.AtmChannel channel;
     private List<String> supportedCards; // Represents supported card types, e.g., "Visa", "MasterCard"
 
     public ATM(String location, int atmId, float balance) {
         this.location = location;
         this.atmId = atmId;
-        this.balance = balance;
+        this.initialCash = balance;
         this.supportedCards = new ArrayList<>();
     }
 
+    public void connect(Bank bank) {
+        this.channel = new AccountLedger.AtmChannel("ATM " + atmId, bank.getChannelLedger(), Math.round((double) initialCash * 100));
+    }
+
     public String getLocation() {
         return location;
     }
@@ -28,7 +35,7 @@ class ATM {
     }
 
     public float getBalance() {
-        return balance;
+        return channel != null ? channel.getCashOnHand() / 100f : initialCash;
     }
 
     public void addSupportedCard(String cardType) {
@@ -39,18 +46,31 @@ class ATM {
         return supportedCards;
     }
 
-    public void dispenseCash(int amount) {
-        if (this.balance >= amount) {
-            this.balance -= amount;
+    // Debits the card's account and hands out the notes in one step
+    public boolean dispenseCash(String cardNumber, int amount) {
+        if (channel == null) {
+            System.out.println("ATM is not connected to a bank.");
+            return false;
+        }
+        if (channel.dispense(cardNumber, amount * 100L)) {
             System.out.println("Dispensing $" + amount);
-        } else {
-            System.out.println("Insufficient funds in ATM.");
+            return true;
         }
+        System.out.println("Cannot dispense $" + amount + ": insufficient funds in account or ATM.");
+        return false;
     }
 
-    public void acceptDeposit(float amount) {
-        this.balance += amount;
-        System.out.println("Accepted deposit of $" + amount);
+    public boolean acceptDeposit(String cardNumber, float amount) {
+        if (channel == null) {
+            System.out.println("ATM is not connected to a bank.");
+            return false;
+        }
+        if (channel.accept(cardNumber, Math.round((double) amount * 100))) {
+            System.out.println("Accepted deposit of $" + amount);
+            return true;
+        }
+        System.out.println("Deposit of $" + amount + " rejected.");
+        return false;
     }
 
     public void displayMessage(String message) {
@@ -93,10 +113,9 @@ class User {
     public void requestCash(int amount, ATM atm, Bank bank, Card card) {
         if (authenticate(this.pin)) { // Authenticate with the user's actual pin
             if (card.validateCard()) {
-                // In a real system, bank would verify user balance and approve transaction
+                // The ATM debits the account through the bank's ledger and dispenses in one step
                 Transaction transaction = new Transaction(User.generateTransactionId(), amount, "Withdrawal", card.getCardNumber());
-                if (bank.processTransaction(transaction)) {
-                    atm.dispenseCash(amount);
+                if (atm.dispenseCash(card.getCardNumber(), amount)) {
                     atm.displayMessage("Cash dispensed successfully.");
                     new Receipt("R" + transaction.getTransactionId(), transaction).printReceipt();
                 } else {
@@ -127,18 +146,25 @@ class User {
 }
 
 // Bank.java
-class Bank {
+// Implements the shared AccountLedger over card numbers so ATMs can work against it.
+class Bank implements AccountLedger {
     private String name;
     private List<String> branches;
     private List<User> users;
     // For simplicity, maintaining user balances here. In real system, this would be in a database.
-    private Map<String, Float> userBalances; // Maps card number to balance
+    private Map<String, Long> userBalances; // Maps card number to balance in cents
+    private AccountLedger.Metered channelLedger; // This bank as seen by its ATMs, with traffic metrics
 
     public Bank(String name) {
         this.name = name;
         this.branches = new ArrayList<>();
         this.users = new ArrayList<>();
-        this.userBalances = new HashMap<>();
+        this.userBalances = new ConcurrentHashMap<>();
+        this.channelLedger = new AccountLedger.Metered(this);
+    }
+
+    public AccountLedger.Metered getChannelLedger() {
+        return channelLedger;
     }
 
     public String getName() {
@@ -155,7 +181,7 @@ class Bank {
 
     public void addUser(User user, float initialBalance) {
         this.users.add(user);
-        this.userBalances.put(user.getCardNumber(), initialBalance);
+        this.userBalances.put(user.getCardNumber(), Math.round((double) initialBalance * 100));
     }
 
     public List<User> getUsers() {
@@ -163,7 +189,34 @@ class Bank {
     }
 
     public float getUserBalance(String cardNumber) {
-        return userBalances.getOrDefault(cardNumber, 0.0f);
+        return balanceOf(cardNumber) / 100f;
+    }
+
+    // AccountLedger, keyed by card number. Updates are atomic per card.
+    @Override
+    public boolean debit(String cardNumber, long cents) {
+        boolean[] done = new boolean[1];
+        userBalances.computeIfPresent(cardNumber, (card, balance) -> {
+            if (cents <= 0 || balance < cents) {
+                return balance;
+            }
+            done[0] = true;
+            return balance - cents;
+        });
+        return done[0];
+    }
+
+    @Override
+    public boolean credit(String cardNumber, long cents) {
+        if (cents <= 0) {
+            return false;
+        }
+        return userBalances.computeIfPresent(cardNumber, (card, balance) -> balance + cents) != null;
+    }
+
+    @Override
+    public long balanceOf(String cardNumber) {
+        return userBalances.getOrDefault(cardNumber, 0L);
     }
 
     public boolean processTransaction(Transaction transaction) {
@@ -172,10 +225,9 @@ class Bank {
         System.out.println("Bank processing transaction: " + transaction.getTransactionType() +
                            " of $" + transaction.getAmount() + " for card " + transaction.getCardNumber());
 
+        long cents = Math.round((double) transaction.getAmount() * 100);
         if ("Withdrawal".equals(transaction.getTransactionType())) {
-            float currentBalance = userBalances.getOrDefault(transaction.getCardNumber(), 0.0f);
-            if (currentBalance >= transaction.getAmount()) {
-                userBalances.put(transaction.getCardNumber(), currentBalance - transaction.getAmount());
+            if (debit(transaction.getCardNumber(), cents)) {
                 System.out.println("Bank: Withdrawal successful for " + transaction.getCardNumber());
                 return true;
             } else {
@@ -183,10 +235,12 @@ class Bank {
                 return false;
             }
         } else if ("Deposit".equals(transaction.getTransactionType())) {
-            float currentBalance = userBalances.getOrDefault(transaction.getCardNumber(), 0.0f);
-            userBalances.put(transaction.getCardNumber(), currentBalance + transaction.getAmount());
-            System.out.println("Bank: Deposit successful for " + transaction.getCardNumber());
-            return true;
+            if (credit(transaction.getCardNumber(), cents)) {
+                System.out.println("Bank: Deposit successful for " + transaction.getCardNumber());
+                return true;
+            }
+            System.out.println("Bank: Unknown card " + transaction.getCardNumber());
+            return false;
         }
         return false; // Unknown transaction type
     }
@@ -306,6 +360,7 @@ public class AtmSystem {
 
         // 3. Create ATM
         ATM atm = new ATM("City Center Plaza", 101, 50000.00f);
+        atm.connect(myBank);
         atm.addSupportedCard("Visa");
         atm.addSupportedCard("MasterCard");
 
@@ -324,8 +379,7 @@ public class AtmSystem {
         float depositAmount = 150.00f;
         // Corrected: Calling generateTransactionId() as a static method of User
         Transaction depositTxn = new Transaction(User.generateTransactionId(), depositAmount, "Deposit", card1.getCardNumber());
-        if (myBank.processTransaction(depositTxn)) {
-            atm.acceptDeposit(depositAmount);
+        if (atm.acceptDeposit(card1.getCardNumber(), depositAmount)) {
             Receipt depositReceipt = new Receipt("R" + depositTxn.getTransactionId(), depositTxn);
             depositReceipt.printReceipt();
         }
@@ -346,6 +400,9 @@ public class AtmSystem {
         atm.displayMessage("Expired card validation:");
         expiredUser.requestCash(50, atm, myBank, expiredCard);
 
+        System.out.println("\nATM cash on hand: $" + atm.getBalance());
+        System.out.println("ATM channel traffic: " + myBank.getChannelLedger().getMetrics());
+
         // Simulate an invalid card scenario (unsupported card type by ATM) - conceptual, as ATM only stores types
         // In a real system, the ATM would check if the card type is supported before processing
         // For this simplified model, we're assuming the card itself is valid if it passes validation.
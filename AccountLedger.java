@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// AccountLedger.java
+// Shared core for the ATM channel of BankingSystem.java and ATMSystem.java. Each system's
+// Bank implements AccountLedger over its own accounts, and each system's ATM does its
+// cash handling through an AccountLedger.AtmChannel, so the dispense/deposit rules and
+// the channel metrics exist once. Amounts are long cents; accounts are addressed by a
+// string key (an account number in BankingSystem, a card number in ATMSystem).
+// Compile it together with either system, e.g. `javac ATMSystem.java AccountLedger.java`.
+public interface AccountLedger {
+    // Takes money out of the account; false (and no change) if it is unknown or short of funds.
+    boolean debit(String accountKey, long cents);
+
+    // Puts money into the account; false if it is unknown.
+    boolean credit(String accountKey, long cents);
+
+    // Current balance in cents, or 0 for an unknown account.
+    long balanceOf(String accountKey);
+
+    // Counters shared by every channel that goes through one Metered ledger.
+    final class Metrics {
+        private final LongAdder debits = new LongAdder();
+        private final LongAdder credits = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder debitedCents = new LongAdder();
+        private final LongAdder creditedCents = new LongAdder();
+
+        public long getDebits() { return debits.sum(); }
+        public long getCredits() { return credits.sum(); }
+        public long getRejected() { return rejected.sum(); }
+        public long getDebitedCents() { return debitedCents.sum(); }
+        public long getCreditedCents() { return creditedCents.sum(); }
+
+        @Override
+        public String toString() {
+            return debits.sum() + " debits (" + debitedCents.sum() + " cents), " + credits.sum() + " credits ("
+                    + creditedCents.sum() + " cents), " + rejected.sum() + " rejected";
+        }
+    }
+
+    // Decorator that counts every operation going through it; a bank hands one of these
+    // to all of its ATMs so their traffic is measured in one place.
+    final class Metered implements AccountLedger {
+        private final AccountLedger ledger;
+        private final Metrics metrics = new Metrics();
+
+        public Metered(AccountLedger ledger) {
+            this.ledger = ledger;
+        }
+
+        public Metrics getMetrics() { return metrics; }
+
+        @Override
+        public boolean debit(String accountKey, long cents) {
+            boolean ok = ledger.debit(accountKey, cents);
+            if (ok) {
+                metrics.debits.increment();
+                metrics.debitedCents.add(cents);
+            } else {
+                metrics.rejected.increment();
+            }
+            return ok;
+        }
+
+        @Override
+        public boolean credit(String accountKey, long cents) {
+            boolean ok = ledger.credit(accountKey, cents);
+            if (ok) {
+                metrics.credits.increment();
+                metrics.creditedCents.add(cents);
+            } else {
+                metrics.rejected.increment();
+            }
+            return ok;
+        }
+
+        @Override
+        public long balanceOf(String accountKey) {
+            return ledger.balanceOf(accountKey);
+        }
+    }
+
+    // The cash-handling rules of one ATM: a withdrawal needs both enough notes in the
+    // machine and a successful ledger debit; a deposit credits the ledger and adds the
+    // notes to the machine. UNLIMITED_CASH turns off cash-on-hand tracking.
+    final class AtmChannel {
+        public static final long UNLIMITED_CASH = Long.MAX_VALUE;
+
+        private final String atmName;
+        private final AccountLedger ledger;
+        private long cashOnHand; // Cents
+
+        public AtmChannel(String atmName, AccountLedger ledger, long cashOnHand) {
+            this.atmName = atmName;
+            this.ledger = ledger;
+            this.cashOnHand = cashOnHand;
+        }
+
+        public String getAtmName() { return atmName; }
+        public synchronized long getCashOnHand() { return cashOnHand; }
+        public long balanceOf(String accountKey) { return ledger.balanceOf(accountKey); }
+
+        public synchronized boolean dispense(String accountKey, long cents) {
+            if (cents <= 0 || cashOnHand < cents) {
+                return false;
+            }
+            if (!ledger.debit(accountKey, cents)) {
+                return false;
+            }
+            if (cashOnHand != UNLIMITED_CASH) {
+                cashOnHand -= cents;
+            }
+            return true;
+        }
+
+        public synchronized boolean accept(String accountKey, long cents) {
+            if (cents <= 0 || !ledger.credit(accountKey, cents)) {
+                return false;
+            }
+            if (cashOnHand != UNLIMITED_CASH) {
+                cashOnHand = Math.addExact(cashOnHand, cents);
+            }
+            return true;
+        }
+    }
+}
@@ -1,43 +1,159 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID; // For generating unique IDs
+import java.util.zip.CRC32;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.StampedLock;
 
 // Bank.java
-class Bank {
+// Also the AccountLedger behind this system's ATMs (see AccountLedger.java)
+class Bank implements AccountLedger {
     private String name;
     private String location;
-    private List<Account> accounts; // 1-to-many relationship with Account
+    private AccountRegistry accounts; // 1-to-many relationship with Account, indexed by number, customer and type
+    private BankJournal journal; // Optional write-ahead log; null keeps the bank purely in memory
+    private LoanPortfolio loanPortfolio; // Loans booked by this bank, stored column-wise for batch accrual
+    private TransactionDedupIndex processedTransactions; // Recently seen transaction IDs and their outcomes
+    private BankBalances balances; // Running totals over all accounts, by account type
+    private PostingEngine postingEngine; // Posts every balance change as a balanced ledger entry
+    private BankingEventBus events; // Operation events for fraud, notification and reporting consumers
+    private AccountLedger.Metered channelLedger; // This bank as seen by its ATMs, with traffic metrics
 
     public Bank(String name, String location) {
+        this(name, location, new TransactionDedupIndex());
+    }
+
+    // For banks whose retry traffic calls for a different dedup window or rate
+    public Bank(String name, String location, TransactionDedupIndex processedTransactions) {
         this.name = name;
         this.location = location;
-        this.accounts = new ArrayList<>();
+        this.accounts = new AccountRegistry();
+        this.loanPortfolio = new LoanPortfolio();
+        this.processedTransactions = processedTransactions;
+        this.balances = new BankBalances();
+        this.postingEngine = new PostingEngine();
+        this.events = new BankingEventBus(BankingEventBus.DEFAULT_CAPACITY);
+        this.channelLedger = new AccountLedger.Metered(this);
     }
 
     // Getters
     public String getName() { return name; }
     public String getLocation() { return location; }
-    public List<Account> getAccounts() { return accounts; }
+    public Collection<Account> getAccounts() { return accounts.all(); }
+    public Collection<Account> getAccountsByCustomer(String customerId) { return accounts.byCustomer(customerId); }
+    public Collection<Account> getAccountsByType(String accountType) { return accounts.byType(accountType); }
+    public BankJournal getJournal() { return journal; }
+    public LoanPortfolio getLoanPortfolio() { return loanPortfolio; }
+    public BankBalances getBalances() { return balances; }
+    public PostingEngine getPostingEngine() { return postingEngine; }
+    public BankingEventBus getEvents() { return events; }
+    public AccountLedger.Metered getChannelLedger() { return channelLedger; }
+
+    // Attached by BankJournal.open once recovery has finished
+    void setJournal(BankJournal journal) { this.journal = journal; }
 
     // Operations
-    public Account openAccount(Customer customer, String accountType, double initialDeposit) {
+    public Account openAccount(Customer customer, String accountType, long initialDeposit) {
         // Generate a unique account number
         String accountNumber = "ACC-" + UUID.randomUUID().toString().substring(0, 8);
-        Account newAccount = new Account(accountNumber, accountType, initialDeposit);
-        this.accounts.add(newAccount);
-        customer.addAccount(newAccount); // Link account to customer
-        System.out.println(customer.getName() + " opened a new " + accountType + " account: " + accountNumber + " with initial deposit: $" + String.format("%.2f", initialDeposit));
+        Account newAccount = new Account(accountNumber, accountType, 0);
+        BankJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginChange();
+        }
+        try {
+            if (journal != null) {
+                journal.logOpen(newAccount, customer);
+            }
+            newAccount.setBank(this);
+            customer.addAccount(newAccount); // Link account to customer first so the registry can index it by customer
+            this.accounts.register(newAccount);
+        } finally {
+            if (journal != null) {
+                journal.endChange();
+            }
+        }
+        if (initialDeposit > 0) {
+            postingEngine.post(LedgerEntry.deposit(newAccount, initialDeposit)); // Cash in, so the ledger stays balanced
+        }
+        System.out.println(customer.getName() + " opened a new " + accountType + " account: " + accountNumber + " with initial deposit: $" + Money.format(initialDeposit));
         return newAccount;
     }
 
     public void closeAccount(Account account) {
-        if (this.accounts.remove(account)) {
+        if (accounts.contains(account.getAccountNumber()) && account.getBalance() > 0) {
+            // Pay out what is left in cash so the account leaves the ledger at zero
+            postingEngine.post(LedgerEntry.withdrawal(account, account.getBalance()));
+            System.out.println("Remaining balance of account " + account.getAccountNumber() + " paid out.");
+        }
+        BankJournal journal = this.journal;
+        boolean removed;
+        if (journal != null) {
+            journal.beginChange();
+        }
+        try {
+            if (journal != null && accounts.contains(account.getAccountNumber())) {
+                journal.logClose(account);
+            }
+            removed = this.accounts.unregister(account);
+        } finally {
+            if (journal != null) {
+                journal.endChange();
+            }
+        }
+        if (removed) {
+            balances.apply(account.getAccountType(), -account.getBalance());
             // Remove account from its associated customer as well
             if (account.getCustomer() != null) {
                 account.getCustomer().removeAccount(account);
             }
+            events.publish(BankingEventType.ACCOUNT_CLOSED, account.getAccountNumber(), 0, 0, System.currentTimeMillis());
             System.out.println("Account " + account.getAccountNumber() + " closed.");
         } else {
             System.out.println("Account " + account.getAccountNumber() + " not found in " + this.name + " bank.");
@@ -45,27 +161,468 @@ class Bank {
     }
 
     public Account getAccount(String accountNumber) {
-        for (Account acc : accounts) {
-            if (acc.getAccountNumber().equals(accountNumber)) {
-                return acc;
-            }
+        Account acc = accounts.get(accountNumber);
+        if (acc == null) {
+            System.out.println("Account " + accountNumber + " not found.");
+        }
+        return acc;
+    }
+
+    // AccountLedger, keyed by account number; both sides post through the posting engine
+    @Override
+    public boolean debit(String accountNumber, long cents) {
+        Account account = accounts.get(accountNumber);
+        return account != null && cents > 0 && postingEngine.post(LedgerEntry.withdrawal(account, cents));
+    }
+
+    @Override
+    public boolean credit(String accountNumber, long cents) {
+        Account account = accounts.get(accountNumber);
+        return account != null && cents > 0 && postingEngine.post(LedgerEntry.deposit(account, cents));
+    }
+
+    @Override
+    public long balanceOf(String accountNumber) {
+        Account account = accounts.get(accountNumber);
+        return account != null ? account.getBalance() : 0;
+    }
+
+    // Lookup without the console message printed by getAccount
+    Account findAccount(String accountNumber) { return accounts.get(accountNumber); }
+
+    // Used by BankJournal recovery to re-create accounts without logging them again
+    void restoreAccount(Account account, Customer customer) {
+        account.setBank(this);
+        if (customer != null) {
+            customer.addAccount(account);
+        }
+        if (accounts.register(account)) {
+            balances.apply(account.getAccountType(), account.getBalance());
+        }
+    }
+
+    void discardAccount(Account account) {
+        if (accounts.unregister(account)) {
+            balances.apply(account.getAccountType(), -account.getBalance());
+        }
+        if (account.getCustomer() != null) {
+            account.getCustomer().removeAccount(account);
         }
-        System.out.println("Account " + accountNumber + " not found.");
-        return null;
     }
 
     // Method to process a transaction that involves the bank's accounts
+    // Retried submissions of the same transaction ID within the dedup window return the
+    // original outcome without executing again.
     public boolean processTransaction(Transaction transaction) {
-        System.out.println("Bank processing transaction: " + transaction.getTransactionId() + " (" + transaction.getTransactionType() + ")");
-        // The Transaction's execute() method will now correctly use the Account's public methods.
-        if (transaction.execute()) {
+        Boolean previous = processedTransactions.claim(transaction.getTransactionId());
+        if (previous != null) {
+            System.out.println("Transaction " + transaction.getTransactionId() + " already processed; returning original result.");
+            return previous;
+        }
+        boolean success = false;
+        boolean completed = false;
+        try {
+            System.out.println("Bank processing transaction: " + transaction.getTransactionId() + " (" + transaction.getTransactionType() + ")");
+            // The Transaction's execute() method will now correctly use the Account's public methods.
+            success = transaction.execute();
+            completed = true;
+        } finally {
+            if (completed) {
+                processedTransactions.complete(transaction.getTransactionId(), success);
+            } else {
+                processedTransactions.release(transaction.getTransactionId()); // Failed abnormally; let a retry run
+            }
+        }
+        if (success) {
             System.out.println("Transaction " + transaction.getTransactionId() + " processed successfully by bank.");
-            return true;
         } else {
             System.out.println("Transaction " + transaction.getTransactionId() + " failed during bank processing.");
+        }
+        return success;
+    }
+}
+
+// AccountRegistry.java
+// Hash-indexed store of a bank's accounts: O(1) lookup by account number plus
+// secondary indexes by customer ID and account type. Backed by concurrent maps so
+// lookups never block, while register/unregister keep the three indexes in step.
+class AccountRegistry {
+    private final Map<String, Account> byNumber = new ConcurrentHashMap<>();
+    private final Map<String, Set<Account>> byCustomer = new ConcurrentHashMap<>();
+    private final Map<String, Set<Account>> byType = new ConcurrentHashMap<>();
+
+    public Account get(String accountNumber) {
+        return byNumber.get(accountNumber);
+    }
+
+    public boolean contains(String accountNumber) {
+        return byNumber.containsKey(accountNumber);
+    }
+
+    public int size() {
+        return byNumber.size();
+    }
+
+    public Collection<Account> all() {
+        return Collections.unmodifiableCollection(byNumber.values());
+    }
+
+    public Collection<Account> byCustomer(String customerId) {
+        return view(byCustomer.get(customerId));
+    }
+
+    public Collection<Account> byType(String accountType) {
+        return view(byType.get(accountType));
+    }
+
+    // Returns false if an account with the same number is already registered.
+    public synchronized boolean register(Account account) {
+        if (byNumber.putIfAbsent(account.getAccountNumber(), account) != null) {
+            return false;
+        }
+        if (account.getCustomer() != null) {
+            index(byCustomer, account.getCustomer().getCustomerId(), account);
+        }
+        index(byType, account.getAccountType(), account);
+        return true;
+    }
+
+    // Must be called while the account is still linked to its customer.
+    public synchronized boolean unregister(Account account) {
+        if (!byNumber.remove(account.getAccountNumber(), account)) {
             return false;
         }
+        if (account.getCustomer() != null) {
+            unindex(byCustomer, account.getCustomer().getCustomerId(), account);
+        }
+        unindex(byType, account.getAccountType(), account);
+        return true;
+    }
+
+    private static void index(Map<String, Set<Account>> index, String key, Account account) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(account);
+    }
+
+    private static void unindex(Map<String, Set<Account>> index, String key, Account account) {
+        Set<Account> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(account);
+            if (bucket.isEmpty()) {
+                index.remove(key, bucket);
+            }
+        }
+    }
+
+    private static Collection<Account> view(Set<Account> bucket) {
+        return bucket == null ? Collections.<Account>emptySet() : Collections.unmodifiableSet(bucket);
+    }
+}
+
+// TransactionDedupIndex.java
+// Bounded, time-windowed memory of processed transaction IDs. IDs are reduced to 64-bit
+// hashes and spread by hash over independently locked stripes, so claims for different
+// IDs rarely contend. Each stripe keeps open-addressing tables, one per slot of an
+// expiry wheel, sized so a slot holds windowMillis / slots worth of that stripe's share
+// of the target rate. Tables are allocated on first use and grow with traffic up to
+// that size. New IDs go into the head slot; the wheel moves on to the next slot, wiping
+// it, when the time slice ends or the head slot is full. Memory is therefore bounded
+// however many transactions flow through: above the target rate the oldest IDs are
+// forgotten early (counted by getEarlyEvictions) rather than new ones going unrecorded.
+// An ID is claimed (PENDING) before execution so a concurrent retry waits on its stripe
+// for the original outcome instead of running the transaction a second time.
+class TransactionDedupIndex {
+    private static final byte EMPTY = 0;
+    private static final byte PENDING = 1;
+    private static final byte SUCCEEDED = 2;
+    private static final byte FAILED = 3;
+    private static final byte RELEASED = 4; // Execution aborted; the ID may be claimed again
+    private static final int INITIAL_TABLE_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    // Ten-minute window sized for 2,000 transactions per second: about 19 MB once every
+    // table has grown to full size, a few KB for a quiet bank.
+    public TransactionDedupIndex() {
+        this(10 * 60 * 1000L, 16, 2_000);
+    }
+
+    public TransactionDedupIndex(long windowMillis, int slots, int targetTransactionsPerSecond) {
+        this(windowMillis, slots, targetTransactionsPerSecond, 16);
+    }
+
+    // The stripe count is rounded up to a power of two. Each slot's table is capped at a
+    // power of two and filled to at most 3/4.
+    public TransactionDedupIndex(long windowMillis, int slots, int targetTransactionsPerSecond, int stripeCount) {
+        int count = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        double perStripeRate = targetTransactionsPerSecond / (double) count;
+        long perSlot = Math.max(1, (long) Math.ceil(perStripeRate * (windowMillis / (double) slots) / 1000.0));
+        long wanted = Math.min(1 << 30, perSlot * 4 / 3 + 1);
+        int capacity = Integer.highestOneBit((int) Math.max(2, wanted - 1)) << 1;
+        long slotMillis = Math.max(1, windowMillis / slots);
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(slots, slotMillis, capacity);
+        }
+    }
+
+    // Returns the earlier outcome if the ID was seen within the window (waiting while it
+    // is still executing elsewhere); otherwise claims it and returns null.
+    public Boolean claim(String transactionId) {
+        long key = hash(transactionId);
+        return stripeFor(key).claim(key);
+    }
+
+    public void complete(String transactionId, boolean success) {
+        long key = hash(transactionId);
+        stripeFor(key).update(key, success ? SUCCEEDED : FAILED);
+    }
+
+    public void release(String transactionId) {
+        long key = hash(transactionId);
+        stripeFor(key).update(key, RELEASED);
+    }
+
+    public long getEarlyEvictions() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.getEarlyEvictions();
+        }
+        return total;
+    }
+
+    // Table positions come from the low bits, so the stripe is picked from the high ones
+    private Stripe stripeFor(long key) {
+        return stripes[(int) (key >>> 40) & stripeMask];
+    }
+
+    // One independently locked expiry wheel
+    private static final class Stripe {
+        private final int slots;
+        private final long slotMillis;
+        private final int capacity;
+        private final int maxEntriesPerSlot;
+        private final long[][] keys;   // Null until the slot is first used
+        private final byte[][] states;
+        private final int[] sizes;
+        private final long[] slotTicks;
+        private int head;           // Slot new IDs go into
+        private long earlyEvictions; // Slots wiped before their window ended
+
+        Stripe(int slots, long slotMillis, int capacity) {
+            this.slots = slots;
+            this.slotMillis = slotMillis;
+            this.capacity = capacity;
+            this.maxEntriesPerSlot = capacity / 4 * 3;
+            this.keys = new long[slots][];
+            this.states = new byte[slots][];
+            this.sizes = new int[slots];
+            this.slotTicks = new long[slots];
+            Arrays.fill(slotTicks, Long.MIN_VALUE);
+        }
+
+        synchronized Boolean claim(long key) {
+            while (true) {
+                long tick = System.currentTimeMillis() / slotMillis;
+                int slot = -1;
+                int index = -1;
+                for (int s = 0; s < slots && index < 0; s++) {
+                    if (isLive(s, tick)) {
+                        index = find(s, key);
+                        slot = s;
+                    }
+                }
+                byte state = index < 0 ? EMPTY : states[slot][index];
+                if (state == PENDING) {
+                    try {
+                        wait(); // update() notifies once the original run completes or is released
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return Boolean.FALSE;
+                    }
+                    continue;
+                }
+                if (state == SUCCEEDED || state == FAILED) {
+                    return state == SUCCEEDED;
+                }
+                if (state == RELEASED) {
+                    states[slot][index] = PENDING;
+                } else {
+                    insert(tick, key, PENDING);
+                }
+                return null;
+            }
+        }
+
+        synchronized void update(long key, byte state) {
+            long tick = System.currentTimeMillis() / slotMillis;
+            for (int s = 0; s < slots; s++) {
+                int index = isLive(s, tick) ? find(s, key) : -1;
+                if (index >= 0) {
+                    states[s][index] = state;
+                    notifyAll();
+                    return;
+                }
+            }
+            // The claim aged out of the window while executing; remember the outcome afresh
+            if (state != RELEASED) {
+                insert(tick, key, state);
+            }
+            notifyAll();
+        }
+
+        synchronized long getEarlyEvictions() { return earlyEvictions; }
+
+        private boolean isLive(int slot, long tick) {
+            return slotTicks[slot] > tick - slots;
+        }
+
+        private int find(int slot, long key) {
+            long[] table = keys[slot];
+            if (table == null) {
+                return -1;
+            }
+            int mask = table.length - 1;
+            for (int i = (int) key & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long tick, long key, byte state) {
+            if (slotTicks[head] != tick || sizes[head] >= maxEntriesPerSlot) {
+                head = (head + 1) % slots;
+                if (isLive(head, tick) && sizes[head] > 0) {
+                    earlyEvictions++; // Over the target rate: the oldest slot goes before its time
+                }
+                if (keys[head] != null) {
+                    Arrays.fill(keys[head], 0L);
+                    Arrays.fill(states[head], EMPTY);
+                }
+                sizes[head] = 0;
+                slotTicks[head] = tick;
+            }
+            int slot = head;
+            if (keys[slot] == null) {
+                keys[slot] = new long[Math.min(INITIAL_TABLE_CAPACITY, capacity)];
+                states[slot] = new byte[keys[slot].length];
+            } else if (keys[slot].length < capacity && sizes[slot] >= keys[slot].length / 4 * 3) {
+                grow(slot);
+            }
+            put(keys[slot], states[slot], key, state);
+            sizes[slot]++;
+        }
+
+        // Doubles a slot's table; a full-size slot hands over to the next one instead
+        private void grow(int slot) {
+            long[] oldKeys = keys[slot];
+            byte[] oldStates = states[slot];
+            long[] newKeys = new long[oldKeys.length * 2];
+            byte[] newStates = new byte[newKeys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(newKeys, newStates, oldKeys[i], oldStates[i]);
+                }
+            }
+            keys[slot] = newKeys;
+            states[slot] = newStates;
+        }
+
+        private static void put(long[] table, byte[] tableStates, long key, byte state) {
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            tableStates[i] = state;
+        }
+    }
+
+    // FNV-1a over the characters, finished with a 64-bit mix; 0 is reserved for empty.
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
+
+// BankBalances.java
+// Bank-wide balance totals per account type, adjusted on every deposit, withdrawal,
+// open and close. Writers hold a StampedLock write lock for a few field updates;
+// snapshot() returns an immutable BalanceSnapshot in which the total and every
+// per-type figure reflect the same point in time.
+class BankBalances {
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Long> byType = new HashMap<>();
+    private long total;
+    private long version;
+
+    void apply(String accountType, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            Long current = byType.get(accountType);
+            byType.put(accountType, current == null ? delta : current + delta);
+            total += delta;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Optimistic read: no locking unless a writer raced with us
+    public long getTotal() {
+        long stamp = lock.tryOptimisticRead();
+        long value = total;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = total;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    public BalanceSnapshot snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return new BalanceSnapshot(total, new HashMap<>(byType), version);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
+
+// BalanceSnapshot.java
+class BalanceSnapshot {
+    private final long total;
+    private final Map<String, Long> byType;
+    private final long version;
+
+    BalanceSnapshot(long total, Map<String, Long> byType, long version) {
+        this.total = total;
+        this.byType = Collections.unmodifiableMap(byType);
+        this.version = version;
     }
+
+    public long getTotal() { return total; }
+    public long getTotal(String accountType) { return byType.containsKey(accountType) ? byType.get(accountType) : 0; }
+    public Map<String, Long> getTotalsByType() { return byType; }
+    public long getVersion() { return version; }
 }
 
 // Customer.java
@@ -75,6 +632,7 @@ class Customer {
     private String address;
     private List<Account> accounts; // 1-to-many relationship with Account
     private List<Loan> loans; // 0-to-many relationship with Loan
+    private CustomerAggregates aggregates; // Running totals kept current by Account and Loan
 
     public Customer(String name, String customerId, String address) {
         this.name = name;
@@ -82,6 +640,7 @@ class Customer {
         this.address = address;
         this.accounts = new ArrayList<>();
         this.loans = new ArrayList<>();
+        this.aggregates = new CustomerAggregates();
     }
 
     // Getters
@@ -90,15 +649,21 @@ class Customer {
     public String getAddress() { return address; }
     public List<Account> getAccounts() { return accounts; }
     public List<Loan> getLoans() { return loans; }
+    public CustomerAggregates getAggregates() { return aggregates; }
+
+    // Maintained incrementally by the customer's accounts; no walk over getAccounts()
+    public long getTotalBalance() { return aggregates.getTotalBalance(); }
 
     // Setters for relationships
     public void addAccount(Account account) {
         this.accounts.add(account);
         account.setCustomer(this); // Link back to customer
+        aggregates.recordBalanceChange(account.getBalance());
     }
 
     public void removeAccount(Account account) {
         if (this.accounts.remove(account)) {
+            aggregates.recordBalanceChange(-account.getBalance());
             account.setCustomer(null); // Unlink
             System.out.println("Account " + account.getAccountNumber() + " removed from " + this.name + "'s profile.");
         }
@@ -107,23 +672,48 @@ class Customer {
     public void addLoan(Loan loan) {
         this.loans.add(loan);
         loan.setCustomer(this); // Link back to customer
+        loan.countExposure(); // Only once the loan is approved; approveLoan counts it otherwise
     }
 
     // Operations
-    public Loan requestLoan(double amount) {
+    public Loan requestLoan(long amount) {
         String loanId = "LOAN-" + UUID.randomUUID().toString().substring(0, 8);
         // Interest rate is usually determined by bank policy, not set by customer directly in request
         Loan newLoan = new Loan(loanId, amount, 0.05); // Example interest rate
-        this.loans.add(newLoan); // Add to customer's loans
-        System.out.println(this.name + " requested a loan of $" + String.format("%.2f", amount));
+        addLoan(newLoan); // Add to customer's loans
+        System.out.println(this.name + " requested a loan of $" + Money.format(amount));
+        return newLoan;
+    }
+
+    // Requests a loan priced and decided by the bank's underwriter; the loan is
+    // approved straight away when the decision allows it.
+    public Loan requestLoan(long amount, LoanUnderwriter underwriter) {
+        UnderwritingDecision decision = underwriter.evaluate(this, amount);
+        System.out.println(this.name + " requested a loan of $" + Money.format(amount) + ": " + decision);
+        if (!decision.isApproved()) {
+            return null;
+        }
+        String loanId = "LOAN-" + UUID.randomUUID().toString().substring(0, 8);
+        Loan newLoan = new Loan(loanId, amount, decision.getInterestRate());
+        addLoan(newLoan);
+        newLoan.approveLoan();
         return newLoan;
     }
 
-    public boolean transferFunds(Account fromAccount, Account toAccount, double amount) {
-        System.out.println(this.name + " attempting to transfer $" + String.format("%.2f", amount) +
+    public boolean transferFunds(Account fromAccount, Account toAccount, long amount) {
+        System.out.println(this.name + " attempting to transfer $" + Money.format(amount) +
                            " from " + fromAccount.getAccountNumber() + " to " + toAccount.getAccountNumber());
+        if (fromAccount.getPostingEngine() == toAccount.getPostingEngine()) {
+            // Same ledger: both sides move in one atomic, balanced entry
+            if (fromAccount.getPostingEngine().post(LedgerEntry.transfer(fromAccount, toAccount, amount))) {
+                System.out.println("Transfer successful!");
+                return true;
+            }
+            System.out.println("Insufficient funds in " + fromAccount.getAccountNumber() + " for transfer.");
+            return false;
+        }
         if (fromAccount.getBalance() >= amount) {
-            // Use Account's public methods for withdrawal and deposit
+            // Different banks: use Account's public methods for withdrawal and deposit
             if (fromAccount.withdraw(amount)) { // This will also record the transaction
                 toAccount.deposit(amount);      // This will also record the transaction
                 System.out.println("Transfer successful!");
@@ -152,58 +742,225 @@ class Customer {
     }
 }
 
+// CustomerAggregates.java
+// Per-customer running figures maintained on every deposit, withdrawal, account
+// link/unlink and loan booking/repayment, so underwriting reads them in O(1) instead of
+// rescanning accounts and histories. The average balance is time-weighted: the
+// integral of the total balance over time divided by the time observed. Loan exposure
+// tracks the principal of approved loans still owed; interest accrued in a
+// LoanPortfolio is not included, and paying it off does not reduce exposure.
+class CustomerAggregates {
+    private long totalBalance; // Cents across all linked accounts
+    private long inflow;
+    private long outflow;
+    private long loanExposure;
+    private double balanceMillis; // Sum of totalBalance * elapsed millis
+    private long since = -1; // Time of the first balance change; averaging starts there
+    private long lastChange;
+
+    synchronized void recordBalanceChange(long delta) {
+        long now = System.currentTimeMillis();
+        if (since < 0) {
+            since = now;
+            lastChange = now;
+        }
+        advance(now);
+        totalBalance += delta;
+    }
+
+    synchronized void recordInflow(long amount) {
+        recordBalanceChange(amount);
+        inflow += amount;
+    }
+
+    synchronized void recordOutflow(long amount) {
+        recordBalanceChange(-amount);
+        outflow += amount;
+    }
+
+    synchronized void recordLoanExposure(long delta) {
+        loanExposure += delta;
+    }
+
+    private void advance(long now) {
+        if (now > lastChange) {
+            balanceMillis += (double) totalBalance * (now - lastChange);
+            lastChange = now;
+        }
+    }
+
+    public synchronized long getTotalBalance() { return totalBalance; }
+    public synchronized long getInflow() { return inflow; }
+    public synchronized long getOutflow() { return outflow; }
+    public synchronized long getLoanExposure() { return loanExposure; }
+
+    public synchronized long getAverageBalance() {
+        if (since < 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        advance(now);
+        long observed = now - since;
+        return observed <= 0 ? totalBalance : Math.round(balanceMillis / observed);
+    }
+}
+
+// LoanUnderwriter.java
+// Scores a loan request from the customer's CustomerAggregates only, so a decision
+// costs a handful of reads no matter how long the customer's history is. Requests
+// that would push exposure past maxLeverage times the average balance are declined;
+// the rate rises with leverage and when outflows outpace inflows.
+class LoanUnderwriter {
+    private final double baseRate;
+    private final double maxLeverage;
+
+    public LoanUnderwriter(double baseRate, double maxLeverage) {
+        this.baseRate = baseRate;
+        this.maxLeverage = maxLeverage;
+    }
+
+    public UnderwritingDecision evaluate(Customer customer, long amount) {
+        CustomerAggregates figures = customer.getAggregates();
+        long averageBalance = figures.getAverageBalance();
+        if (averageBalance <= 0) {
+            return UnderwritingDecision.decline("no positive average balance");
+        }
+        double leverage = (double) (figures.getLoanExposure() + amount) / averageBalance;
+        if (leverage > maxLeverage) {
+            return UnderwritingDecision.decline(String.format("leverage %.1fx exceeds %.1fx", leverage, maxLeverage));
+        }
+        double rate = baseRate + 0.02 * (leverage / maxLeverage);
+        if (figures.getOutflow() > figures.getInflow()) {
+            rate += 0.01; // Draining accounts
+        }
+        return UnderwritingDecision.approve(Math.round(rate * 10000) / 10000.0);
+    }
+}
+
+// UnderwritingDecision.java
+class UnderwritingDecision {
+    private final boolean approved;
+    private final double interestRate;
+    private final String reason;
+
+    private UnderwritingDecision(boolean approved, double interestRate, String reason) {
+        this.approved = approved;
+        this.interestRate = interestRate;
+        this.reason = reason;
+    }
+
+    static UnderwritingDecision approve(double interestRate) {
+        return new UnderwritingDecision(true, interestRate, null);
+    }
+
+    static UnderwritingDecision decline(String reason) {
+        return new UnderwritingDecision(false, 0, reason);
+    }
+
+    public boolean isApproved() { return approved; }
+    public double getInterestRate() { return interestRate; }
+    public String getReason() { return reason; }
+
+    @Override
+    public String toString() {
+        return approved ? String.format("approved at %.2f%%", interestRate * 100) : "declined (" + reason + ")";
+    }
+}
+
 // Account.java
 class Account {
     private String accountNumber;
-    private double balance;
+    private long balance; // In cents, see Money
     private String accountType; // e.g., "Savings", "Checking", "Loan"
     private Customer customer; // 1-to-1 relationship with Customer (owns) - added for bi-directional navigation
-    private List<Transaction> transactions; // 0-to-many relationship with Transaction (records)
+    private TransactionHistory history; // 0-to-many relationship with Transaction (records), stored column-wise
+    private Bank bank; // Bank holding this account; its journal (if any) records every balance change
 
-    public Account(String accountNumber, String accountType, double initialBalance) {
+    public Account(String accountNumber, String accountType, long initialBalance) {
         this.accountNumber = accountNumber;
         this.accountType = accountType;
         this.balance = initialBalance;
-        this.transactions = new ArrayList<>();
+        this.history = new TransactionHistory();
     }
 
     // Getters
     public String getAccountNumber() { return accountNumber; }
-    public double getBalance() { return balance; }
+    public long getBalance() { return balance; }
     public String getAccountType() { return accountType; }
     public Customer getCustomer() { return customer; }
-    public List<Transaction> getTransactions() { return transactions; }
+    public TransactionHistory getHistory() { return history; }
+
+    // Materializes Transaction objects from the compact history; prefer getHistory() for large scans.
+    public List<Transaction> getTransactions() {
+        final List<Transaction> result = new ArrayList<>(history.size());
+        history.forEach((id, timestamp, amountCents, type) ->
+                result.add(new Transaction(TransactionHistory.formatId(id), new Date(timestamp), amountCents,
+                        TransactionHistory.typeName(type), this)));
+        return result;
+    }
 
     // Setter for Customer (to link it)
     public void setCustomer(Customer customer) { this.customer = customer; }
 
+    void setBank(Bank bank) { this.bank = bank; }
+
+    Bank getBank() { return bank; }
+
+    // The bank's engine, or a detached one for accounts not (yet) held by a bank
+    PostingEngine getPostingEngine() { return bank != null ? bank.getPostingEngine() : PostingEngine.DETACHED; }
+
+    // Used by BankJournal recovery; bypasses history and logging
+    void restoreBalance(long balance) {
+        long delta = balance - this.balance;
+        if (customer != null) {
+            customer.getAggregates().recordBalanceChange(delta);
+        }
+        if (bank != null) {
+            bank.getBalances().apply(accountType, delta);
+        }
+        this.balance = balance;
+    }
+
+    // Applies one leg of a ledger entry; only PostingEngine calls this, holding the
+    // account's lock after validating the whole entry and journaling it as one record.
+    // Updates the balance, the customer and bank running totals, and finally the history.
+    // The engine publishes the leg's event once it has released the account locks.
+    void applyPosting(byte type, long amount, long delta) {
+        long newBalance = Money.add(balance, delta);
+        this.balance = newBalance;
+        if (customer != null) {
+            if (delta >= 0) {
+                customer.getAggregates().recordInflow(delta);
+            } else {
+                customer.getAggregates().recordOutflow(-delta);
+            }
+        }
+        if (bank != null) {
+            bank.getBalances().apply(accountType, delta);
+        }
+        history.append(ThreadLocalRandom.current().nextInt(), System.currentTimeMillis(), amount, type);
+    }
+
     // Operations
-    public void deposit(double amount) {
+    public void deposit(long amount) {
         if (amount > 0) {
-            this.balance += amount;
-            String transactionId = "TXN-" + UUID.randomUUID().toString().substring(0, 8);
-            Transaction depositTxn = new Transaction(transactionId, amount, "Deposit", this);
-            this.transactions.add(depositTxn);
-            System.out.println("Deposited $" + String.format("%.2f", amount) + " to account " + accountNumber + ". New balance: $" + String.format("%.2f", balance));
+            getPostingEngine().post(LedgerEntry.deposit(this, amount));
+            System.out.println("Deposited $" + Money.format(amount) + " to account " + accountNumber + ". New balance: $" + Money.format(balance));
         } else {
             System.out.println("Deposit amount must be positive.");
         }
     }
 
-    public boolean withdraw(double amount) {
+    public boolean withdraw(long amount) {
         if (amount <= 0) {
             System.out.println("Withdrawal amount must be positive.");
             return false;
         }
-        if (this.balance >= amount) {
-            this.balance -= amount;
-            String transactionId = "TXN-" + UUID.randomUUID().toString().substring(0, 8);
-            Transaction withdrawalTxn = new Transaction(transactionId, amount, "Withdrawal", this);
-            this.transactions.add(withdrawalTxn);
-            System.out.println("Withdrew $" + String.format("%.2f", amount) + " from account " + accountNumber + ". New balance: $" + String.format("%.2f", balance));
+        if (getPostingEngine().post(LedgerEntry.withdrawal(this, amount))) {
+            System.out.println("Withdrew $" + Money.format(amount) + " from account " + accountNumber + ". New balance: $" + Money.format(balance));
             return true;
         } else {
-            System.out.println("Insufficient funds in account " + accountNumber + ". Current balance: $" + String.format("%.2f", balance));
+            System.out.println("Insufficient funds in account " + accountNumber + ". Current balance: $" + Money.format(balance));
             return false;
         }
     }
@@ -222,87 +979,1111 @@ class Account {
     }
 }
 
-// ATM.java
-class ATM {
-    private String location;
-    // An ATM 'owns' a Bank and 'processes' Transactions implicitly via its interactions
-    // In a real system, ATM would interface with a central Bank system.
-    private Bank bank; // Link to the bank it belongs to/interfaces with
+// BankingEventType.java
+enum BankingEventType {
+    DEPOSIT, WITHDRAWAL, TRANSFER_IN, TRANSFER_OUT, LOAN_DISBURSEMENT, ACCOUNT_CLOSED;
 
-    public ATM(String location, Bank bank) {
-        this.location = location;
-        this.bank = bank;
+    private static final BankingEventType[] BY_HISTORY_TYPE = { DEPOSIT, WITHDRAWAL, TRANSFER_IN, TRANSFER_OUT, LOAN_DISBURSEMENT };
+
+    static BankingEventType fromHistoryType(byte type) {
+        return BY_HISTORY_TYPE[type];
     }
+}
 
-    // Getter
-    public String getLocation() { return location; }
+// BankingEvent.java
+// One slot of the event ring. Instances are allocated once and overwritten as the ring
+// wraps, so subscribers must copy out anything they want to keep past onEvent.
+class BankingEvent {
+    private long sequence;
+    private BankingEventType type;
+    private String accountNumber;
+    private long amount; // Cents
+    private long balanceAfter; // Cents
+    private long timestamp;
 
-    // Operations
-    public void dispenseCash(Account account, double amount) {
-        System.out.println("ATM at " + location + " attempting to dispense $" + String.format("%.2f", amount) + " from account " + account.getAccountNumber());
-        // Call the account's withdraw method directly
-        if (account.withdraw(amount)) {
-            System.out.println("Cash dispensed successfully.");
-        } else {
-            System.out.println("Cash dispensing failed. Check account balance.");
-        }
+    void set(long sequence, BankingEventType type, String accountNumber, long amount, long balanceAfter, long timestamp) {
+        this.sequence = sequence;
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.timestamp = timestamp;
     }
 
-    public void acceptDeposit(Account account, double amount) {
-        System.out.println("ATM at " + location + " attempting to accept deposit of $" + String.format("%.2f", amount) + " to account " + account.getAccountNumber());
-        // Call the account's deposit method directly
-        account.deposit(amount);
-        System.out.println("Deposit accepted successfully by ATM.");
-    }
+    public long getSequence() { return sequence; }
+    public BankingEventType getType() { return type; }
+    public String getAccountNumber() { return accountNumber; }
+    public long getAmount() { return amount; }
+    public long getBalanceAfter() { return balanceAfter; }
+    public long getTimestamp() { return timestamp; }
 }
 
-// Loan.java
-class Loan {
-    private String loanId;
-    private double loanAmount;
-    private double interestRate;
-    private Customer customer; // 1-to-1 relationship with Customer (requests)
-    private boolean approved;
+// BankingEventBus.java
+// In-process publish/subscribe for banking operations over a pre-allocated ring of
+// BankingEvents. Producers claim a sequence with one atomic increment, fill the slot
+// and mark it available; each subscriber runs on its own thread with its own cursor.
+// A producer never laps the slowest subscriber: when the ring is full it waits
+// (back-pressure) instead of dropping events, so events are published only after the
+// posting engine has released its account locks. Subscribers that run out of events
+// spin briefly and then block on a condition that producers signal only while someone
+// is blocked, so an idle bus costs nothing and a busy one takes no lock per event; a
+// producer waiting for space blocks the same way until a subscriber moves on. A
+// subscriber's own thread never waits for space, since it may be what holds the ring
+// up: what it publishes (a fraud reversal posted from onEvent, say) goes into the ring
+// if there is room and otherwise into a deferred queue that subscribers move into the
+// ring as they advance. With no subscribers, publishing only overwrites the ring.
+class BankingEventBus {
+    static final int DEFAULT_CAPACITY = 1 << 12;
+    private static final int SPINS_BEFORE_BLOCKING = 100;
+    private static final ThreadLocal<Boolean> ON_SUBSCRIBER_THREAD = new ThreadLocal<>();
 
-    public Loan(String loanId, double loanAmount, double interestRate) {
-        this.loanId = loanId;
-        this.loanAmount = loanAmount;
-        this.interestRate = interestRate;
-        this.approved = false; // Not approved by default
+    private final BankingEvent[] ring;
+    private final int mask;
+    private final AtomicLongArray available; // Sequence last published into each slot
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile long gatingCache = Long.MAX_VALUE; // Last seen minimum subscriber cursor
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition published = waitLock.newCondition(); // Signalled for blocked subscribers
+    private final Condition consumed = waitLock.newCondition();  // Signalled for blocked producers
+    private final AtomicInteger blockedSubscribers = new AtomicInteger();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+    private final ConcurrentLinkedQueue<BankingEvent> deferred = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    public BankingEventBus(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Event bus capacity must be a power of two.");
+        }
+        this.ring = new BankingEvent[capacity];
+        this.mask = capacity - 1;
+        this.available = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new BankingEvent();
+            available.set(i, -1);
+        }
     }
 
-    // Getters
-    public String getLoanId() { return loanId; }
-    public double getLoanAmount() { return loanAmount; }
-    public double getInterestRate() { return interestRate; }
-    public Customer getCustomer() { return customer; }
-    public boolean isApproved() { return approved; }
+    // Must not be called while holding account locks: it may wait for a subscriber
+    void publish(BankingEventType type, String accountNumber, long amount, long balanceAfter, long timestamp) {
+        if (ON_SUBSCRIBER_THREAD.get() != null) {
+            if (!deferred.isEmpty() || !tryPublish(type, accountNumber, amount, balanceAfter, timestamp)) {
+                BankingEvent event = new BankingEvent();
+                event.set(-1, type, accountNumber, amount, balanceAfter, timestamp);
+                deferred.add(event);
+            }
+            return;
+        }
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint > gatingCache || gatingCache == Long.MAX_VALUE) {
+            awaitCapacity(wrapPoint);
+        }
+        fill(sequence, type, accountNumber, amount, balanceAfter, timestamp);
+    }
 
-    // Setter for Customer
+    // Claims a sequence only if the ring has room for it; never waits
+    private boolean tryPublish(BankingEventType type, String accountNumber, long amount, long balanceAfter, long timestamp) {
+        while (true) {
+            long current = claimed.get();
+            long sequence = current + 1;
+            long wrapPoint = sequence - ring.length;
+            if ((wrapPoint > gatingCache || gatingCache == Long.MAX_VALUE) && !hasCapacity(wrapPoint)) {
+                return false;
+            }
+            if (claimed.compareAndSet(current, sequence)) {
+                fill(sequence, type, accountNumber, amount, balanceAfter, timestamp);
+                return true;
+            }
+        }
+    }
+
+    private void fill(long sequence, BankingEventType type, String accountNumber, long amount, long balanceAfter, long timestamp) {
+        int index = (int) sequence & mask;
+        ring[index].set(sequence, type, accountNumber, amount, balanceAfter, timestamp);
+        // A volatile write, so either a subscriber about to block sees it or we see the subscriber
+        available.set(index, sequence);
+        if (blockedSubscribers.get() > 0) {
+            signal(published);
+        }
+    }
+
+    // Moves deferred events into the ring, oldest first, while there is room. One thread
+    // drains at a time; the drainer looks again after letting go, so room made by a
+    // thread that found the lock taken is not missed.
+    private void drainDeferred() {
+        while (!deferred.isEmpty() && drainLock.tryLock()) {
+            boolean full = false;
+            try {
+                for (BankingEvent event; !full && (event = deferred.peek()) != null; ) {
+                    full = !tryPublish(event.getType(), event.getAccountNumber(), event.getAmount(),
+                            event.getBalanceAfter(), event.getTimestamp());
+                    if (!full) {
+                        deferred.poll();
+                    }
+                }
+            } finally {
+                drainLock.unlock();
+            }
+            if (full && !hasCapacity(claimed.get() + 1 - ring.length)) {
+                return;
+            }
+        }
+    }
+
+    private void awaitCapacity(long wrapPoint) {
+        for (int spins = 0; !hasCapacity(wrapPoint); spins++) {
+            if (spins < SPINS_BEFORE_BLOCKING) {
+                Thread.yield();
+                continue;
+            }
+            waitLock.lock();
+            try {
+                blockedProducers.incrementAndGet();
+                while (!hasCapacity(wrapPoint)) {
+                    consumed.awaitUninterruptibly();
+                }
+            } finally {
+                blockedProducers.decrementAndGet();
+                waitLock.unlock();
+            }
+            return;
+        }
+    }
+
+    private boolean hasCapacity(long wrapPoint) {
+        long min = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            min = Math.min(min, subscription.cursor.get());
+        }
+        gatingCache = min;
+        return wrapPoint <= min;
+    }
+
+    private void signal(Condition condition) {
+        waitLock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    // Starts a subscriber thread that sees every event published from now on.
+    public Subscription subscribe(String name, Consumer<BankingEvent> handler) {
+        Subscription subscription = new Subscription(name, handler, claimed.get());
+        subscriptions.add(subscription);
+        gatingCache = Long.MIN_VALUE; // Force producers to re-read the cursors
+        subscription.thread.start();
+        return subscription;
+    }
+
+    public final class Subscription {
+        private final AtomicLong cursor; // Last sequence handled
+        private final Consumer<BankingEvent> handler;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Subscription(String name, Consumer<BankingEvent> handler, long start) {
+            this.cursor = new AtomicLong(start);
+            this.handler = handler;
+            this.thread = new Thread(this::run, "banking-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            ON_SUBSCRIBER_THREAD.set(Boolean.TRUE);
+            while (running) {
+                long next = cursor.get() + 1;
+                int index = (int) next & mask;
+                if (!awaitPublished(index, next)) {
+                    return;
+                }
+                try {
+                    handler.accept(ring[index]);
+                } catch (RuntimeException e) {
+                    System.out.println("Subscriber " + thread.getName() + " failed on event " + next + ": " + e);
+                }
+                cursor.set(next);
+                if (blockedProducers.get() > 0) {
+                    signal(consumed);
+                }
+                drainDeferred();
+            }
+        }
+
+        // False if the subscription was closed while waiting
+        private boolean awaitPublished(int index, long sequence) {
+            for (int spins = 0; spins < SPINS_BEFORE_BLOCKING; spins++) {
+                if (available.get(index) == sequence) {
+                    return true;
+                }
+                Thread.yield();
+            }
+            drainDeferred();
+            waitLock.lock();
+            try {
+                blockedSubscribers.incrementAndGet();
+                while (running && available.get(index) != sequence) {
+                    published.awaitUninterruptibly();
+                }
+            } finally {
+                blockedSubscribers.decrementAndGet();
+                waitLock.unlock();
+            }
+            return running;
+        }
+
+        public long getCursor() { return cursor.get(); }
+
+        // Waits until this subscriber has handled everything published so far.
+        public boolean awaitCaughtUp(long timeoutMillis) {
+            long target = claimed.get();
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (cursor.get() < target) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                LockSupport.parkNanos(100_000L);
+            }
+            return true;
+        }
+
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            gatingCache = Long.MIN_VALUE;
+            signal(published); // Wake this subscriber if it is blocked
+            signal(consumed);  // Producers gated on it can go on
+        }
+    }
+}
+
+// TransactionHistory.java
+// Per-account transaction log stored in fixed-size columnar chunks instead of one
+// Transaction object per entry: timestamps as epoch millis, amounts as long cents,
+// types as byte codes and IDs as the 32-bit value behind "TXN-xxxxxxxx". Only the
+// newest chunk is mutable; it starts small and doubles up to CHUNK_SIZE, so accounts
+// with few transactions stay cheap. Timestamps are kept non-decreasing, which lets
+// date-range reads skip whole chunks and binary-search inside the first one.
+class TransactionHistory {
+    static final int CHUNK_SIZE = 1024;
+    private static final int INITIAL_CHUNK_CAPACITY = 8;
+
+    static final byte DEPOSIT = 0;
+    static final byte WITHDRAWAL = 1;
+    static final byte TRANSFER_IN = 2;
+    static final byte TRANSFER_OUT = 3;
+    static final byte LOAN_DISBURSEMENT = 4;
+    private static final String[] TYPE_NAMES = { "Deposit", "Withdrawal", "Transfer In", "Transfer Out", "Loan Disbursement" };
+
+    // Receives one history entry at a time; nothing is allocated per entry.
+    interface Visitor {
+        void visit(int id, long timestamp, long amountCents, byte type);
+    }
+
+    private static final class Chunk {
+        long[] timestamps;
+        long[] amounts;
+        int[] ids;
+        byte[] types;
+        int size;
+
+        Chunk(int capacity) {
+            timestamps = new long[capacity];
+            amounts = new long[capacity];
+            ids = new int[capacity];
+            types = new byte[capacity];
+        }
+
+        boolean isFull() { return size == CHUNK_SIZE; }
+
+        void ensureCapacity() {
+            if (size == timestamps.length) {
+                int capacity = Math.min(CHUNK_SIZE, timestamps.length * 2);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+        }
+
+        long firstTimestamp() { return timestamps[0]; }
+        long lastTimestamp() { return timestamps[size - 1]; }
+    }
+
+    private Chunk[] chunks = new Chunk[0];
+    private int size;
+
+    public synchronized int size() { return size; }
+
+    public synchronized void append(int id, long timestamp, long amountCents, byte type) {
+        Chunk tail = chunks.length == 0 ? null : chunks[chunks.length - 1];
+        if (tail != null && tail.size > 0 && timestamp < tail.lastTimestamp()) {
+            timestamp = tail.lastTimestamp(); // Clock stepped back; keep the column sorted
+        }
+        if (tail == null || tail.isFull()) {
+            tail = new Chunk(INITIAL_CHUNK_CAPACITY);
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = tail;
+        }
+        tail.ensureCapacity();
+        int i = tail.size++;
+        tail.timestamps[i] = timestamp;
+        tail.amounts[i] = amountCents;
+        tail.ids[i] = id;
+        tail.types[i] = type;
+        size++;
+    }
+
+    public synchronized void forEach(Visitor visitor) {
+        for (Chunk chunk : chunks) {
+            visitRange(chunk, 0, chunk.size, visitor);
+        }
+    }
+
+    // Visits entries with fromMillis <= timestamp < toMillis, oldest first.
+    public synchronized void forEachBetween(long fromMillis, long toMillis, Visitor visitor) {
+        for (Chunk chunk : chunks) {
+            if (chunk.size == 0 || chunk.lastTimestamp() < fromMillis) {
+                continue;
+            }
+            if (chunk.firstTimestamp() >= toMillis) {
+                break;
+            }
+            int start = lowerBound(chunk, fromMillis);
+            int end = lowerBound(chunk, toMillis);
+            visitRange(chunk, start, end, visitor);
+        }
+    }
+
+    public void forEachBetween(Date from, Date to, Visitor visitor) {
+        forEachBetween(from.getTime(), to.getTime(), visitor);
+    }
+
+    private static void visitRange(Chunk chunk, int start, int end, Visitor visitor) {
+        for (int i = start; i < end; i++) {
+            visitor.visit(chunk.ids[i], chunk.timestamps[i], chunk.amounts[i], chunk.types[i]);
+        }
+    }
+
+    // First index whose timestamp is >= millis.
+    private static int lowerBound(Chunk chunk, long millis) {
+        int low = 0;
+        int high = chunk.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunk.timestamps[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static String typeName(byte type) {
+        return TYPE_NAMES[type];
+    }
+
+    // -1 for names that are not a history type
+    public static byte typeCode(String name) {
+        for (byte i = 0; i < TYPE_NAMES.length; i++) {
+            if (TYPE_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // True for entry types that take money out of the account
+    public static boolean isDebit(byte type) {
+        return type == WITHDRAWAL || type == TRANSFER_OUT;
+    }
+
+    public static String formatId(int id) {
+        String hex = Integer.toHexString(id);
+        return "TXN-00000000".substring(0, 12 - hex.length()) + hex;
+    }
+}
+
+// StatementGenerator.java
+// Month-end statement batch job. The bank's accounts are split into index ranges and
+// processed on a fork-join pool; each account's statement is computed from its
+// TransactionHistory and streamed straight to its own file, so memory stays bounded
+// by one account's working set per worker regardless of how many accounts exist.
+class StatementGenerator {
+    private static final int ACCOUNTS_PER_TASK = 512;
+    private static final DateTimeFormatter LINE_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path outputDirectory;
+    private final ForkJoinPool pool;
+    private final ZoneId zone;
+
+    public StatementGenerator(Path outputDirectory) {
+        this(outputDirectory, ForkJoinPool.commonPool(), ZoneId.systemDefault());
+    }
+
+    public StatementGenerator(Path outputDirectory, ForkJoinPool pool, ZoneId zone) {
+        this.outputDirectory = outputDirectory;
+        this.pool = pool;
+        this.zone = zone;
+    }
+
+    // Writes one statement per account and returns the number of statements written.
+    public int generate(Bank bank, YearMonth month) throws IOException {
+        Files.createDirectories(outputDirectory);
+        List<Account> accounts = new ArrayList<>(bank.getAccounts());
+        long from = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        try {
+            return pool.invoke(new StatementTask(accounts, 0, accounts.size(), month, from, to));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class StatementTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final List<Account> accounts;
+        private final int start;
+        private final int end;
+        private final YearMonth month;
+        private final long from;
+        private final long to;
+
+        StatementTask(List<Account> accounts, int start, int end, YearMonth month, long from, long to) {
+            this.accounts = accounts;
+            this.start = start;
+            this.end = end;
+            this.month = month;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (end - start <= ACCOUNTS_PER_TASK) {
+                for (int i = start; i < end; i++) {
+                    writeStatement(accounts.get(i), month, from, to);
+                }
+                return end - start;
+            }
+            int mid = (start + end) >>> 1;
+            StatementTask left = new StatementTask(accounts, start, mid, month, from, to);
+            left.fork();
+            int right = new StatementTask(accounts, mid, end, month, from, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    private void writeStatement(Account account, YearMonth month, long from, long to) {
+        TransactionHistory history = account.getHistory();
+        // Walk back from the current balance: everything at or after 'to' happened after
+        // the closing date, everything at or after 'from' after the opening date. Postings
+        // change the balance and then the history under the account lock, so both are
+        // read under it too.
+        long current;
+        long[] since = new long[3]; // [0] net since 'from', [1] net since 'to', [2] entries in the month
+        synchronized (account) {
+            current = account.getBalance();
+            history.forEachBetween(from, Long.MAX_VALUE, (id, timestamp, amountCents, type) -> {
+                long signed = TransactionHistory.isDebit(type) ? -amountCents : amountCents;
+                since[0] += signed;
+                if (timestamp >= to) {
+                    since[1] += signed;
+                } else {
+                    since[2]++;
+                }
+            });
+        }
+        long opening = current - since[0];
+        long closing = current - since[1];
+        long listed = since[2];
+
+        Path file = outputDirectory.resolve(account.getAccountNumber() + "-" + month + ".txt");
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("Statement for account " + account.getAccountNumber() + " (" + account.getAccountType() + "), " + month);
+            out.newLine();
+            if (account.getCustomer() != null) {
+                out.write("Customer: " + account.getCustomer().getName() + " (" + account.getCustomer().getCustomerId() + ")");
+                out.newLine();
+            }
+            out.write("Opening balance: $" + Money.format(opening));
+            out.newLine();
+            long[] totals = new long[3]; // [0] deposits, [1] withdrawals, [2] entries written
+            history.forEachBetween(from, to, (id, timestamp, amountCents, type) -> {
+                // History is in time order, so postings since the balance was read come last
+                if (totals[2]++ >= listed) {
+                    return;
+                }
+                totals[TransactionHistory.isDebit(type) ? 1 : 0] += amountCents;
+                try {
+                    out.write(LINE_DATE.format(Instant.ofEpochMilli(timestamp).atZone(zone)) + "  "
+                            + TransactionHistory.formatId(id) + "  " + TransactionHistory.typeName(type)
+                            + "  $" + Money.format(amountCents));
+                    out.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.write("Total credits: $" + Money.format(totals[0]) + ", total debits: $" + Money.format(totals[1]));
+            out.newLine();
+            out.write("Closing balance: $" + Money.format(closing));
+            out.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+// BankJournal.java
+// Durability layer for a Bank. Every account open/close and every ledger entry is
+// appended to a write-ahead log before it is applied; concurrent writers share fsyncs
+// (group commit): whoever takes the sync lock forces everything buffered so far, and
+// writers whose records were covered return without forcing again. A ledger entry is
+// one record holding all of its legs, so recovery replays it whole or not at all.
+// snapshot() rotates the log, writes all balances to a compact binary file and deletes
+// the segments it covers; open() loads the latest snapshot, replays the log tail and
+// starts a fresh segment. A change holds the apply gate (shared) from its log append
+// until it is applied in memory, and snapshot() reads the balances holding it
+// exclusively, so a snapshot never covers a record its balances do not yet include.
+// Recovery cuts a torn tail off its segment, so later appends never follow garbage.
+// Records carry resulting balances, and the general-ledger
+// totals as of that record, so replay is idempotent. Transaction histories and loans
+// are not journaled; only account membership, balances and general-ledger totals are.
+class BankJournal {
+    private static final int SNAPSHOT_MAGIC = 0x42534E32; // "BSN2"
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte OPEN = 10;
+    private static final byte CLOSE = 11;
+    private static final byte ENTRY = 12;
+    // Ledger entry legs reuse the TransactionHistory type codes (DEPOSIT, WITHDRAWAL, ...)
+
+    private final Path directory;
+    private final Bank bank;
+    private final Object syncLock = new Object();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+    private final ReentrantReadWriteLock applyGate = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long lastSeq;    // guarded by this
+    private long durableSeq; // guarded by syncLock
+    // General-ledger totals as of lastSeq, in log order; guarded by this
+    private final long[] generalLedger = new long[GeneralLedgerAccount.values().length];
+    private boolean recoveredLedger; // Snapshot or entry records supplied the totals above
+
+    private BankJournal(Path directory, Bank bank) {
+        this.directory = directory;
+        this.bank = bank;
+    }
+
+    // Recovers the bank's accounts from the directory, then attaches the journal to the bank.
+    // Recovered accounts are linked to the given customers by customer ID where possible.
+    public static BankJournal open(Path directory, Bank bank, Collection<Customer> customers) throws IOException {
+        Files.createDirectories(directory);
+        BankJournal journal = new BankJournal(directory, bank);
+        Map<String, Customer> customersById = new HashMap<>();
+        for (Customer customer : customers) {
+            customersById.put(customer.getCustomerId(), customer);
+        }
+        journal.recover(customersById);
+        synchronized (journal) {
+            if (journal.recoveredLedger) {
+                bank.getPostingEngine().restoreGeneralLedger(journal.generalLedger);
+            } else {
+                for (GeneralLedgerAccount account : GeneralLedgerAccount.values()) {
+                    journal.generalLedger[account.ordinal()] = bank.getPostingEngine().getGeneralLedgerBalance(account);
+                }
+            }
+        }
+        journal.startSegment();
+        bank.setJournal(journal);
+        return journal;
+    }
+
+    // Bracket a change from its log append until it is applied in memory
+    void beginChange() { applyGate.readLock().lock(); }
+    void endChange() { applyGate.readLock().unlock(); }
+
+    void logOpen(Account account, Customer customer) {
+        append(OPEN, account.getAccountNumber(), account.getAccountType(),
+                customer != null ? customer.getCustomerId() : "", 0, account.getBalance());
+    }
+
+    void logClose(Account account) {
+        append(CLOSE, account.getAccountNumber(), "", "", 0, 0);
+    }
+
+    // Logs each ledger entry as one record, all of them in one buffered write, and waits
+    // until they are durable with a single fsync; the caller holds every account's lock
+    // and the apply gate, and applies the entries only after this returns.
+    void logEntries(List<LedgerEntry> entries, List<long[]> balancesAfter) {
+        long seq;
+        try {
+            synchronized (this) {
+                long[] ledgerAfter = generalLedger.clone();
+                seq = lastSeq;
+                for (int e = 0; e < entries.size(); e++) {
+                    LedgerEntry entry = entries.get(e);
+                    long[] after = balancesAfter.get(e);
+                    for (int i = 0; i < ledgerAfter.length; i++) {
+                        ledgerAfter[i] = Money.add(ledgerAfter[i], entry.generalLedgerDeltas[i]);
+                    }
+                    recordBytes.reset();
+                    record.writeLong(++seq);
+                    record.writeByte(ENTRY);
+                    record.writeShort(entry.accounts.length);
+                    for (int i = 0; i < entry.accounts.length; i++) {
+                        record.writeUTF(entry.accounts[i].getAccountNumber());
+                        record.writeByte(entry.types[i]);
+                        record.writeLong(Math.abs(entry.deltas[i]));
+                        record.writeLong(after[i]);
+                    }
+                    record.writeByte(ledgerAfter.length);
+                    for (long total : ledgerAfter) {
+                        record.writeLong(total);
+                    }
+                    writeRecord();
+                }
+                lastSeq = seq;
+                System.arraycopy(ledgerAfter, 0, generalLedger, 0, ledgerAfter.length);
+            }
+            awaitDurable(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log append failed", e);
+        }
+    }
+
+    private void append(byte type, String accountNumber, String accountType, String customerId,
+                        long amountCents, long balanceCents) {
+        long seq;
+        try {
+            synchronized (this) {
+                seq = lastSeq + 1;
+                recordBytes.reset();
+                record.writeLong(seq);
+                record.writeByte(type);
+                record.writeUTF(accountNumber);
+                record.writeUTF(accountType);
+                record.writeUTF(customerId);
+                record.writeLong(amountCents);
+                record.writeLong(balanceCents);
+                writeRecord();
+                lastSeq = seq;
+            }
+            awaitDurable(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log append failed", e);
+        }
+    }
+
+    // Frames the record built in recordBytes as length, payload, CRC; caller holds this
+    private void writeRecord() throws IOException {
+        crc.reset();
+        crc.update(recordBytes.toByteArray(), 0, recordBytes.size());
+        out.writeInt(recordBytes.size());
+        recordBytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (durableSeq >= seq) {
+                return; // Another writer's fsync already covered this record
+            }
+            long target;
+            synchronized (this) {
+                out.flush();
+                target = lastSeq;
+            }
+            channel.force(false);
+            durableSeq = target;
+        }
+    }
+
+    // Writes a snapshot of every account balance and drops the log segments it supersedes.
+    // Changes wait while the balances are copied out; the file is written after that.
+    public void snapshot() throws IOException {
+        long snapshotSeq;
+        long[] ledgerAtSnapshot;
+        List<Account> accounts;
+        long[] balances;
+        applyGate.writeLock().lock();
+        try {
+            synchronized (syncLock) {
+                synchronized (this) {
+                    out.flush();
+                    channel.force(false);
+                    out.close();
+                    snapshotSeq = lastSeq;
+                    ledgerAtSnapshot = generalLedger.clone();
+                    durableSeq = lastSeq;
+                    startSegment();
+                }
+            }
+            // Every change logged up to snapshotSeq has been applied, and none after it
+            accounts = new ArrayList<>(bank.getAccounts());
+            balances = new long[accounts.size()];
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = accounts.get(i).getBalance();
+            }
+        } finally {
+            applyGate.writeLock().unlock();
+        }
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream snap = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(snapshotChannel), 1 << 16))) {
+            snap.writeInt(SNAPSHOT_MAGIC);
+            snap.writeLong(snapshotSeq);
+            snap.writeByte(ledgerAtSnapshot.length);
+            for (long total : ledgerAtSnapshot) {
+                snap.writeLong(total);
+            }
+            for (int i = 0; i < balances.length; i++) {
+                Account account = accounts.get(i);
+                snap.writeBoolean(true);
+                snap.writeUTF(account.getAccountNumber());
+                snap.writeUTF(account.getAccountType());
+                snap.writeUTF(account.getCustomer() != null ? account.getCustomer().getCustomerId() : "");
+                snap.writeLong(balances[i]);
+            }
+            snap.writeBoolean(false);
+            snap.flush();
+            snapshotChannel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path segment : segments()) {
+            if (segmentFirstSeq(segment) <= snapshotSeq) {
+                Files.delete(segment);
+            }
+        }
+        System.out.println("Journal snapshot written at sequence " + snapshotSeq + ".");
+    }
+
+    // Flushes the log and detaches the journal; the bank carries on in memory only.
+    public void close() throws IOException {
+        bank.setJournal(null);
+        synchronized (syncLock) {
+            synchronized (this) {
+                out.flush();
+                channel.force(false);
+                out.close();
+                durableSeq = lastSeq;
+            }
+        }
+    }
+
+    private void startSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, lastSeq + 1, SEGMENT_SUFFIX));
+        FileOutputStream file = new FileOutputStream(segment.toFile(), true);
+        channel = file.getChannel();
+        out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentFirstSeq(a), segmentFirstSeq(b)));
+        return segments;
+    }
+
+    private static long segmentFirstSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void recover(Map<String, Customer> customers) throws IOException {
+        long snapshotSeq = 0;
+        int restored = 0;
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a bank snapshot: " + snapshotFile);
+                }
+                snapshotSeq = in.readLong();
+                readGeneralLedger(in);
+                while (in.readBoolean()) {
+                    String number = in.readUTF();
+                    String type = in.readUTF();
+                    String customerId = in.readUTF();
+                    long balanceCents = in.readLong();
+                    restore(number, type, customerId, balanceCents, customers);
+                    restored++;
+                }
+            }
+        }
+        lastSeq = snapshotSeq;
+        int replayed = 0;
+        for (Path segment : segments()) {
+            replayed += replay(segment, snapshotSeq, customers);
+        }
+        durableSeq = lastSeq;
+        System.out.println("Journal recovery: " + restored + " accounts from snapshot, " + replayed + " log records replayed.");
+    }
+
+    private int replay(Path segment, long snapshotSeq, Map<String, Customer> customers) throws IOException {
+        int replayed = 0;
+        long valid = 0; // Bytes up to the end of the last intact record
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            byte[] buffer = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > 1 << 20) {
+                        break; // Garbage after a torn write
+                    }
+                    if (buffer.length < length) {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break; // Torn tail from a crash: everything before it is intact
+                }
+                valid += 4 + length + 4;
+                DataInputStream rec = new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+                long seq = rec.readLong();
+                byte type = rec.readByte();
+                lastSeq = Math.max(lastSeq, seq);
+                if (type == ENTRY) {
+                    if (seq > snapshotSeq) {
+                        replayEntry(rec);
+                        replayed++;
+                    }
+                    continue;
+                }
+                String number = rec.readUTF();
+                String accountType = rec.readUTF();
+                String customerId = rec.readUTF();
+                rec.readLong(); // amount, kept for auditing
+                long balanceCents = rec.readLong();
+                if (seq <= snapshotSeq) {
+                    continue;
+                }
+                Account account = bank.findAccount(number);
+                if (type == OPEN) {
+                    if (account == null) {
+                        restore(number, accountType, customerId, balanceCents, customers);
+                    }
+                } else if (type == CLOSE) {
+                    if (account != null) {
+                        bank.discardAccount(account);
+                    }
+                } else if (account != null) {
+                    account.restoreBalance(balanceCents);
+                }
+                replayed++;
+            }
+        }
+        if (valid < Files.size(segment)) {
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                file.truncate(valid);
+                file.force(true);
+            }
+        }
+        return replayed;
+    }
+
+    // Every leg's resulting balance, then the general-ledger totals as of the entry
+    private void replayEntry(DataInputStream rec) throws IOException {
+        int legs = rec.readShort();
+        for (int i = 0; i < legs; i++) {
+            String number = rec.readUTF();
+            rec.readByte();  // leg type, kept for auditing
+            rec.readLong();  // amount, kept for auditing
+            long balanceCents = rec.readLong();
+            Account account = bank.findAccount(number);
+            if (account != null) {
+                account.restoreBalance(balanceCents);
+            }
+        }
+        readGeneralLedger(rec);
+    }
+
+    private void readGeneralLedger(DataInputStream in) throws IOException {
+        int accounts = in.readByte();
+        for (int i = 0; i < accounts; i++) {
+            long total = in.readLong();
+            if (i < generalLedger.length) {
+                generalLedger[i] = total;
+            }
+        }
+        recoveredLedger = true;
+    }
+
+    private void restore(String number, String type, String customerId, long balanceCents, Map<String, Customer> customers) {
+        Account account = new Account(number, type, balanceCents);
+        bank.restoreAccount(account, customers.get(customerId));
+    }
+}
+
+// ATM.java
+class ATM {
+    private String location;
+    // An ATM 'owns' a Bank and 'processes' Transactions implicitly via its interactions
+    // In a real system, ATM would interface with a central Bank system.
+    private Bank bank; // Link to the bank it belongs to/interfaces with
+    private AccountLedger.AtmChannel channel; // Shared ATM rules over the bank's ledger
+
+    public ATM(String location, Bank bank) {
+        this(location, bank, AccountLedger.AtmChannel.UNLIMITED_CASH);
+    }
+
+    public ATM(String location, Bank bank, long cashOnHand) {
+        this.location = location;
+        this.bank = bank;
+        this.channel = new AccountLedger.AtmChannel(location, bank.getChannelLedger(), cashOnHand);
+    }
+
+    // Getter
+    public String getLocation() { return location; }
+    public long getCashOnHand() { return channel.getCashOnHand(); }
+
+    // Operations
+    public void dispenseCash(Account account, long amount) {
+        System.out.println("ATM at " + location + " attempting to dispense $" + Money.format(amount) + " from account " + account.getAccountNumber());
+        if (channel.dispense(account.getAccountNumber(), amount)) {
+            System.out.println("Cash dispensed successfully. New balance: $" + Money.format(account.getBalance()));
+        } else {
+            System.out.println("Cash dispensing failed. Check account balance.");
+        }
+    }
+
+    public void acceptDeposit(Account account, long amount) {
+        System.out.println("ATM at " + location + " attempting to accept deposit of $" + Money.format(amount) + " to account " + account.getAccountNumber());
+        if (channel.accept(account.getAccountNumber(), amount)) {
+            System.out.println("Deposit accepted successfully by ATM. New balance: $" + Money.format(account.getBalance()));
+        } else {
+            System.out.println("Deposit rejected by ATM.");
+        }
+    }
+}
+
+// Loan.java
+class Loan {
+    private String loanId;
+    private long loanAmount; // Outstanding balance in cents
+    private double interestRate;
+    private Customer customer; // 1-to-1 relationship with Customer (requests)
+    private boolean approved;
+    private boolean disbursed;
+    private LoanPortfolio portfolio; // Once booked, the portfolio holds the outstanding balance
+    private int slot;
+    private long exposure; // Principal counted in the customer's loan exposure
+    private boolean exposureCounted;
+
+    public Loan(String loanId, long loanAmount, double interestRate) {
+        this.loanId = loanId;
+        this.loanAmount = loanAmount;
+        this.interestRate = interestRate;
+        this.approved = false; // Not approved by default
+    }
+
+    // Getters
+    public String getLoanId() { return loanId; }
+    public long getLoanAmount() { return portfolio != null ? portfolio.outstanding(slot) : loanAmount; }
+    public double getInterestRate() { return interestRate; }
+    public Customer getCustomer() { return customer; }
+    public boolean isApproved() { return approved; }
+
+    // Setter for Customer
     public void setCustomer(Customer customer) { this.customer = customer; }
 
+    // Called by LoanPortfolio.add; from then on the balance lives in the portfolio's columns
+    void bookInto(LoanPortfolio portfolio, int slot) {
+        this.portfolio = portfolio;
+        this.slot = slot;
+    }
+
+    int slotIn(LoanPortfolio portfolio) { return this.portfolio == portfolio ? slot : -1; }
+
     // Operations
     public void approveLoan() {
         this.approved = true;
-        System.out.println("Loan " + loanId + " for $" + String.format("%.2f", loanAmount) + " approved for " + (customer != null ? customer.getName() : "N/A Customer") + ".");
+        countExposure();
+        if (portfolio != null) {
+            portfolio.startAccruing(slot);
+        }
+        System.out.println("Loan " + loanId + " for $" + Money.format(getLoanAmount()) + " approved for " + (customer != null ? customer.getName() : "N/A Customer") + ".");
         // In a real system, approved loan amount would be credited to customer's account
         // For simplicity, we'll just print a message.
     }
 
-    public void repayLoan(double amount) {
+    // Adds the principal to the customer's exposure once the loan is both approved and linked
+    void countExposure() {
+        if (approved && customer != null && !exposureCounted) {
+            exposureCounted = true;
+            exposure = getLoanAmount();
+            customer.getAggregates().recordLoanExposure(exposure);
+        }
+    }
+
+    public void repayLoan(long amount) {
         if (this.approved) {
-            if (loanAmount >= amount) {
-                this.loanAmount -= amount;
-                System.out.println("Repaid $" + String.format("%.2f", amount) + " for loan " + loanId + ". Remaining balance: $" + String.format("%.2f", loanAmount));
+            long outstanding = applyRepayment(amount);
+            if (exposureCounted) {
+                // Repayments clear capitalised interest first; exposure only falls once
+                // the balance drops below the principal still counted
+                long remainingExposure = Math.min(exposure, Math.max(0, outstanding - amount));
+                customer.getAggregates().recordLoanExposure(remainingExposure - exposure);
+                exposure = remainingExposure;
+            }
+            if (outstanding >= amount) {
+                System.out.println("Repaid $" + Money.format(amount) + " for loan " + loanId + ". Remaining balance: $" + Money.format(outstanding - amount));
             } else {
                 System.out.println("Repaying more than outstanding loan amount for loan " + loanId + ". Loan balance set to 0.");
-                this.loanAmount = 0; // Loan fully repaid
             }
         } else {
             System.out.println("Loan " + loanId + " is not yet approved.");
         }
     }
 
+    // Credits the approved principal to the customer's account, booked against the
+    // bank's loans-receivable ledger account.
+    public boolean disburseTo(Account account) {
+        if (!approved) {
+            System.out.println("Loan " + loanId + " is not yet approved.");
+            return false;
+        }
+        if (disbursed) {
+            System.out.println("Loan " + loanId + " has already been disbursed.");
+            return false;
+        }
+        long amount = getLoanAmount();
+        account.getPostingEngine().post(LedgerEntry.loanDisbursement(account, amount));
+        disbursed = true;
+        System.out.println("Loan " + loanId + " disbursed: $" + Money.format(amount) + " credited to account " + account.getAccountNumber() + ".");
+        return true;
+    }
+
+    // Reduces the balance (never below zero) and returns the balance before the repayment
+    private long applyRepayment(long amount) {
+        if (portfolio != null) {
+            return portfolio.repay(slot, amount);
+        }
+        long outstanding = loanAmount;
+        loanAmount = Math.max(0, outstanding - amount);
+        return outstanding;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -317,44 +2098,608 @@ class Loan {
     }
 }
 
+// LoanPortfolio.java
+// A bank's loans in structure-of-arrays form: outstanding balances, daily rates and
+// sub-cent interest carry each sit in their own primitive column, indexed by the slot
+// the Loan was booked into. The nightly accrual pass is a tight, branch-free loop over
+// those columns (unapproved loans simply have a daily rate of 0), split into ranges on
+// a fork-join pool. Accrual and repayments synchronize on the portfolio.
+class LoanPortfolio {
+    private static final int LOANS_PER_TASK = 1 << 14;
+    private static final int DAYS_PER_YEAR = 365;
+
+    private Loan[] loans = new Loan[16];
+    private long[] outstanding = new long[16]; // Cents
+    private double[] annualRates = new double[16];
+    private double[] dailyRates = new double[16]; // 0 until the loan is approved
+    private double[] carry = new double[16]; // Fractions of a cent not yet capitalized
+    private long[] accrued = new long[16]; // Total interest capitalized, cents
+    private int size;
+    private final ForkJoinPool pool;
+
+    public LoanPortfolio() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public LoanPortfolio(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public synchronized int size() { return size; }
+
+    public synchronized void add(Loan loan) {
+        if (size == loans.length) {
+            int capacity = size * 2;
+            loans = Arrays.copyOf(loans, capacity);
+            outstanding = Arrays.copyOf(outstanding, capacity);
+            annualRates = Arrays.copyOf(annualRates, capacity);
+            dailyRates = Arrays.copyOf(dailyRates, capacity);
+            carry = Arrays.copyOf(carry, capacity);
+            accrued = Arrays.copyOf(accrued, capacity);
+        }
+        int slot = size++;
+        loans[slot] = loan;
+        outstanding[slot] = loan.getLoanAmount();
+        annualRates[slot] = loan.getInterestRate();
+        if (loan.isApproved()) {
+            dailyRates[slot] = annualRates[slot] / DAYS_PER_YEAR;
+        }
+        loan.bookInto(this, slot);
+    }
+
+    synchronized long outstanding(int slot) { return outstanding[slot]; }
+
+    synchronized long accruedInterest(int slot) { return accrued[slot]; }
+
+    synchronized void startAccruing(int slot) {
+        dailyRates[slot] = annualRates[slot] / DAYS_PER_YEAR;
+    }
+
+    synchronized long repay(int slot, long amount) {
+        long before = outstanding[slot];
+        outstanding[slot] = Math.max(0, before - amount);
+        return before;
+    }
+
+    // Accrues 'days' of simple daily interest on every approved loan and capitalizes it.
+    // Returns the total interest added across the portfolio, in cents.
+    public synchronized long accrueInterest(int days) {
+        return pool.invoke(new AccrualTask(0, size, days));
+    }
+
+    private final class AccrualTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final int start;
+        private final int end;
+        private final int days;
+
+        AccrualTask(int start, int end, int days) {
+            this.start = start;
+            this.end = end;
+            this.days = days;
+        }
+
+        @Override
+        protected Long compute() {
+            if (end - start <= LOANS_PER_TASK) {
+                return accrueRange(start, end, days);
+            }
+            int mid = (start + end) >>> 1;
+            AccrualTask left = new AccrualTask(start, mid, days);
+            left.fork();
+            long right = new AccrualTask(mid, end, days).compute();
+            return left.join() + right;
+        }
+    }
+
+    private long accrueRange(int start, int end, int days) {
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            double interest = outstanding[i] * dailyRates[i] * days + carry[i];
+            long whole = (long) interest;
+            carry[i] = interest - whole;
+            outstanding[i] += whole;
+            accrued[i] += whole;
+            total += whole;
+        }
+        return total;
+    }
+
+    // Level monthly payment that pays off the current balance over termMonths, in cents.
+    public synchronized long monthlyPayment(Loan loan, int termMonths) {
+        int slot = slotOf(loan);
+        return payment(outstanding[slot], annualRates[slot], termMonths);
+    }
+
+    // Monthly payments for every loan in the portfolio over the same term, computed in parallel.
+    public synchronized long[] monthlyPayments(int termMonths) {
+        long[] payments = new long[size];
+        pool.invoke(new PaymentTask(payments, 0, size, termMonths));
+        return payments;
+    }
+
+    private final class PaymentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long[] payments;
+        private final int start;
+        private final int end;
+        private final int termMonths;
+
+        PaymentTask(long[] payments, int start, int end, int termMonths) {
+            this.payments = payments;
+            this.start = start;
+            this.end = end;
+            this.termMonths = termMonths;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= LOANS_PER_TASK) {
+                for (int i = start; i < end; i++) {
+                    payments[i] = payment(outstanding[i], annualRates[i], termMonths);
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new PaymentTask(payments, start, mid, termMonths), new PaymentTask(payments, mid, end, termMonths));
+        }
+    }
+
+    // Full month-by-month amortization table for one loan, again stored column-wise.
+    public synchronized AmortizationSchedule schedule(Loan loan, int termMonths) {
+        int slot = slotOf(loan);
+        double monthlyRate = annualRates[slot] / 12;
+        long balance = outstanding[slot];
+        long payment = payment(balance, annualRates[slot], termMonths);
+        AmortizationSchedule schedule = new AmortizationSchedule(termMonths);
+        for (int month = 0; month < termMonths; month++) {
+            long interest = Math.round(balance * monthlyRate);
+            long principal = month == termMonths - 1 ? balance : Math.min(balance, payment - interest);
+            balance -= principal;
+            schedule.set(month, principal + interest, interest, principal, balance);
+        }
+        return schedule;
+    }
+
+    private static long payment(long principal, double annualRate, int termMonths) {
+        if (principal <= 0) {
+            return 0;
+        }
+        double monthlyRate = annualRate / 12;
+        if (monthlyRate == 0) {
+            return (principal + termMonths - 1) / termMonths;
+        }
+        double factor = Math.pow(1 + monthlyRate, -termMonths);
+        return (long) Math.ceil(principal * monthlyRate / (1 - factor));
+    }
+
+    private int slotOf(Loan loan) {
+        int slot = loan.slotIn(this);
+        if (slot >= 0) {
+            return slot;
+        }
+        throw new IllegalArgumentException("Loan " + loan.getLoanId() + " is not in this portfolio.");
+    }
+}
+
+// AmortizationSchedule.java
+class AmortizationSchedule {
+    private final long[] payments;
+    private final long[] interest;
+    private final long[] principal;
+    private final long[] remaining;
+
+    AmortizationSchedule(int months) {
+        payments = new long[months];
+        interest = new long[months];
+        principal = new long[months];
+        remaining = new long[months];
+    }
+
+    void set(int month, long payment, long interestPart, long principalPart, long balance) {
+        payments[month] = payment;
+        interest[month] = interestPart;
+        principal[month] = principalPart;
+        remaining[month] = balance;
+    }
+
+    public int getMonths() { return payments.length; }
+    public long getPayment(int month) { return payments[month]; }
+    public long getInterest(int month) { return interest[month]; }
+    public long getPrincipal(int month) { return principal[month]; }
+    public long getRemaining(int month) { return remaining[month]; }
+}
+
 // Transaction.java
 class Transaction {
     private String transactionId;
     private Date date;
-    private double amount;
+    private long amount; // In cents
     private String transactionType; // e.g., "Deposit", "Withdrawal", "Transfer"
+    private byte typeCode; // TransactionHistory code for transactionType, -1 if unsupported
     private Account account; // 1-to-1 relationship with Account (records)
 
-    public Transaction(String transactionId, double amount, String transactionType, Account account) {
+    public Transaction(String transactionId, long amount, String transactionType, Account account) {
+        this(transactionId, new Date(), amount, transactionType, account); // Current date
+    }
+
+    // Used when rebuilding a Transaction from an account's TransactionHistory
+    Transaction(String transactionId, Date date, long amount, String transactionType, Account account) {
         this.transactionId = transactionId;
-        this.date = new Date(); // Current date
+        this.date = date;
         this.amount = amount;
         this.transactionType = transactionType;
+        this.typeCode = TransactionHistory.typeCode(transactionType);
         this.account = account;
     }
 
     // Getters
     public String getTransactionId() { return transactionId; }
     public Date getDate() { return date; }
-    public double getAmount() { return amount; }
+    public long getAmount() { return amount; }
     public String getTransactionType() { return transactionType; }
     public Account getAccount() { return account; }
 
     // Operations
     public boolean execute() {
-        // This method applies the transaction's effect to the account by using its public methods.
+        // Posts the transaction as a balanced ledger entry against the bank's cash account.
         System.out.println("Executing transaction " + transactionId + " (" + transactionType + ") for account " + account.getAccountNumber());
-        switch (transactionType) {
-            case "Deposit":
-                account.deposit(amount); // Use public deposit method
-                return true;
-            case "Withdrawal":
-                return account.withdraw(amount); // Use public withdraw method
-            default:
-                System.out.println("Unknown transaction type: " + transactionType);
-                return false;
+        LedgerEntry entry;
+        if (typeCode == TransactionHistory.DEPOSIT) {
+            entry = LedgerEntry.deposit(account, amount);
+        } else if (typeCode == TransactionHistory.WITHDRAWAL) {
+            entry = LedgerEntry.withdrawal(account, amount);
+        } else {
+            System.out.println("Unsupported transaction type: " + transactionType);
+            return false;
+        }
+        boolean posted = account.getPostingEngine().post(entry);
+        System.out.println(posted ? "Posted " + transactionType.toLowerCase() + " of $" + Money.format(amount) + ". New balance: $" + Money.format(account.getBalance())
+                                  : "Insufficient funds in account " + account.getAccountNumber() + ".");
+        return posted;
+    }
+}
+
+// GeneralLedgerAccount.java
+// The bank's own side of every entry; customer accounts are the other side.
+enum GeneralLedgerAccount {
+    CASH, LOANS_RECEIVABLE
+}
+
+// LedgerEntry.java
+// A balanced double-entry posting: legs on customer accounts (with the history type
+// they are recorded as) plus legs on general-ledger accounts. Every entry's legs sum
+// to zero, so the sum of all balances in a bank is always zero.
+final class LedgerEntry {
+    final Account[] accounts;
+    final byte[] types;
+    final long[] deltas;
+    final long[] generalLedgerDeltas = new long[GeneralLedgerAccount.values().length];
+
+    private LedgerEntry(Account[] accounts, byte[] types, long[] deltas) {
+        this.accounts = accounts;
+        this.types = types;
+        this.deltas = deltas;
+    }
+
+    private LedgerEntry withGeneralLedger(GeneralLedgerAccount account, long delta) {
+        generalLedgerDeltas[account.ordinal()] += delta;
+        return checkBalanced();
+    }
+
+    private LedgerEntry checkBalanced() {
+        long sum = 0;
+        for (long delta : deltas) {
+            sum = Money.add(sum, delta);
+        }
+        for (long delta : generalLedgerDeltas) {
+            sum = Money.add(sum, delta);
+        }
+        if (sum != 0) {
+            throw new IllegalArgumentException("Ledger entry does not balance: off by " + Money.format(sum));
+        }
+        return this;
+    }
+
+    private static void requirePositive(long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Posting amount must be positive.");
         }
     }
+
+    public static LedgerEntry deposit(Account to, long amount) {
+        requirePositive(amount);
+        return new LedgerEntry(new Account[] { to }, new byte[] { TransactionHistory.DEPOSIT }, new long[] { amount })
+                .withGeneralLedger(GeneralLedgerAccount.CASH, -amount);
+    }
+
+    public static LedgerEntry withdrawal(Account from, long amount) {
+        requirePositive(amount);
+        return new LedgerEntry(new Account[] { from }, new byte[] { TransactionHistory.WITHDRAWAL }, new long[] { -amount })
+                .withGeneralLedger(GeneralLedgerAccount.CASH, amount);
+    }
+
+    public static LedgerEntry transfer(Account from, Account to, long amount) {
+        requirePositive(amount);
+        return new LedgerEntry(new Account[] { from, to },
+                new byte[] { TransactionHistory.TRANSFER_OUT, TransactionHistory.TRANSFER_IN },
+                new long[] { -amount, amount }).checkBalanced();
+    }
+
+    public static LedgerEntry loanDisbursement(Account to, long amount) {
+        requirePositive(amount);
+        return new LedgerEntry(new Account[] { to }, new byte[] { TransactionHistory.LOAN_DISBURSEMENT }, new long[] { amount })
+                .withGeneralLedger(GeneralLedgerAccount.LOANS_RECEIVABLE, -amount);
+    }
+}
+
+// PostingEngine.java
+// Posts LedgerEntries atomically. The customer accounts of an entry are locked in
+// account-number order (so concurrent entries cannot deadlock), every debit is checked
+// against the projected balance, and only then are all legs applied. General-ledger
+// legs never need a funds check and go to atomic counters, so the bank's cash account
+// is not a lock every posting has to queue on.
+class PostingEngine {
+    // Shared ledger for accounts that do not belong to a bank
+    static final PostingEngine DETACHED = new PostingEngine();
+    static final int MAX_GROUP_ACCOUNTS = 256; // Locks held at once by postAll
+
+    private final AtomicLong[] generalLedger = new AtomicLong[GeneralLedgerAccount.values().length];
+
+    public PostingEngine() {
+        for (int i = 0; i < generalLedger.length; i++) {
+            generalLedger[i] = new AtomicLong();
+        }
+    }
+
+    public long getGeneralLedgerBalance(GeneralLedgerAccount account) {
+        return generalLedger[account.ordinal()].get();
+    }
+
+    // Used by BankJournal recovery
+    void restoreGeneralLedger(long[] totals) {
+        for (int i = 0; i < generalLedger.length; i++) {
+            generalLedger[i].set(totals[i]);
+        }
+    }
+
+    // Returns false, changing nothing, if any customer account would be overdrawn.
+    public boolean post(LedgerEntry entry) {
+        Account[] lockOrder = entry.accounts.clone();
+        Arrays.sort(lockOrder, (a, b) -> a.getAccountNumber().compareTo(b.getAccountNumber()));
+        boolean[] posted = new boolean[1];
+        List<LedgerEntry> accepted = new ArrayList<>(1);
+        List<long[]> balancesAfter = new ArrayList<>(1);
+        postLocked(Collections.singletonList(entry), posted, 0, accepted, balancesAfter, lockOrder, 0);
+        publish(accepted, balancesAfter);
+        return posted[0];
+    }
+
+    // Posts each entry atomically, in order; result[i] says whether entries.get(i) posted.
+    // Entries are taken in groups of up to MAX_GROUP_ACCOUNTS distinct accounts of one
+    // bank: the group's accounts are locked together, each entry is checked against the
+    // balances left by the group's earlier entries, and the accepted ones are logged as
+    // one write with one fsync and only then applied.
+    public boolean[] postAll(List<LedgerEntry> entries) {
+        boolean[] posted = new boolean[entries.size()];
+        int from = 0;
+        while (from < entries.size()) {
+            Set<Account> accounts = Collections.newSetFromMap(new IdentityHashMap<>());
+            Bank bank = entries.get(from).accounts[0].getBank();
+            int to = from;
+            while (to < entries.size()) {
+                LedgerEntry next = entries.get(to);
+                if (to > from && (next.accounts[0].getBank() != bank
+                        || accounts.size() + next.accounts.length > MAX_GROUP_ACCOUNTS)) {
+                    break;
+                }
+                Collections.addAll(accounts, next.accounts);
+                to++;
+            }
+            Account[] lockOrder = accounts.toArray(new Account[0]);
+            Arrays.sort(lockOrder, (a, b) -> a.getAccountNumber().compareTo(b.getAccountNumber()));
+            List<LedgerEntry> accepted = new ArrayList<>(to - from);
+            List<long[]> balancesAfter = new ArrayList<>(to - from);
+            postLocked(entries.subList(from, to), posted, from, accepted, balancesAfter, lockOrder, 0);
+            publish(accepted, balancesAfter);
+            from = to;
+        }
+        return posted;
+    }
+
+    private void postLocked(List<LedgerEntry> group, boolean[] posted, int offset, List<LedgerEntry> accepted,
+                            List<long[]> balancesAfter, Account[] lockOrder, int index) {
+        if (index == lockOrder.length) {
+            apply(group, posted, offset, accepted, balancesAfter);
+            return;
+        }
+        if (index > 0 && lockOrder[index] == lockOrder[index - 1]) {
+            postLocked(group, posted, offset, accepted, balancesAfter, lockOrder, index + 1); // Already held
+            return;
+        }
+        synchronized (lockOrder[index]) {
+            postLocked(group, posted, offset, accepted, balancesAfter, lockOrder, index + 1);
+        }
+    }
+
+    // Fills accepted and balancesAfter with the entries that posted
+    private void apply(List<LedgerEntry> group, boolean[] posted, int offset, List<LedgerEntry> accepted,
+                       List<long[]> balancesAfter) {
+        Map<Account, Long> projected = group.size() > 1 ? new IdentityHashMap<>() : null;
+        for (int e = 0; e < group.size(); e++) {
+            LedgerEntry entry = group.get(e);
+            long[] after = project(entry, projected);
+            if (after == null) {
+                continue;
+            }
+            if (projected != null) {
+                for (int i = 0; i < after.length; i++) {
+                    projected.put(entry.accounts[i], after[i]);
+                }
+            }
+            accepted.add(entry);
+            balancesAfter.add(after);
+            posted[offset + e] = true;
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        // Write-ahead: the entries are durable before any leg changes in memory, so a
+        // failed or torn log write leaves every account as it was
+        BankJournal journal = journalOf(accepted.get(0));
+        if (journal == null) {
+            for (LedgerEntry entry : accepted) {
+                applyLegs(entry);
+            }
+            return;
+        }
+        journal.beginChange();
+        try {
+            journal.logEntries(accepted, balancesAfter);
+            for (LedgerEntry entry : accepted) {
+                applyLegs(entry);
+            }
+        } finally {
+            journal.endChange();
+        }
+    }
+
+    // Each leg's resulting balance, starting from the projected balances of a group's
+    // earlier entries (if any); null if a debit would overdraw its account.
+    private static long[] project(LedgerEntry entry, Map<Account, Long> projected) {
+        long[] after = new long[entry.accounts.length];
+        for (int i = 0; i < after.length; i++) {
+            Account account = entry.accounts[i];
+            Long start = projected != null ? projected.get(account) : null;
+            long balance = start != null ? start : account.getBalance();
+            for (int j = 0; j < i; j++) {
+                if (entry.accounts[j] == account) {
+                    balance = after[j];
+                }
+            }
+            after[i] = Money.add(balance, entry.deltas[i]);
+            if (entry.deltas[i] < 0 && after[i] < 0) {
+                return null;
+            }
+        }
+        return after;
+    }
+
+    // Events go out once the account locks are released, so a slow subscriber (or one
+    // that posts to the bank itself) never stalls a thread holding them. Events for one
+    // account may therefore arrive out of posting order; balanceAfter orders them.
+    private static void publish(List<LedgerEntry> accepted, List<long[]> balancesAfter) {
+        long now = System.currentTimeMillis();
+        for (int e = 0; e < accepted.size(); e++) {
+            LedgerEntry entry = accepted.get(e);
+            long[] after = balancesAfter.get(e);
+            for (int i = 0; i < entry.accounts.length; i++) {
+                Bank bank = entry.accounts[i].getBank();
+                if (bank != null) {
+                    bank.getEvents().publish(BankingEventType.fromHistoryType(entry.types[i]),
+                            entry.accounts[i].getAccountNumber(), Math.abs(entry.deltas[i]), after[i], now);
+                }
+            }
+        }
+    }
+
+    private void applyLegs(LedgerEntry entry) {
+        for (int i = 0; i < entry.accounts.length; i++) {
+            entry.accounts[i].applyPosting(entry.types[i], Math.abs(entry.deltas[i]), entry.deltas[i]);
+        }
+        for (int i = 0; i < generalLedger.length; i++) {
+            if (entry.generalLedgerDeltas[i] != 0) {
+                generalLedger[i].addAndGet(entry.generalLedgerDeltas[i]);
+            }
+        }
+    }
+
+    private static BankJournal journalOf(LedgerEntry entry) {
+        Bank bank = entry.accounts[0].getBank();
+        return bank != null ? bank.getJournal() : null;
+    }
+
+    // End-of-day check: customer balances (summed in parallel) plus the general ledger must
+    // come to zero. Run it while postings are quiesced for a point-in-time result.
+    public TrialBalance trialBalance(Collection<Account> accounts) {
+        long customerTotal = accounts.parallelStream().mapToLong(Account::getBalance).sum();
+        long[] ledger = new long[generalLedger.length];
+        for (int i = 0; i < ledger.length; i++) {
+            ledger[i] = generalLedger[i].get();
+        }
+        return new TrialBalance(customerTotal, ledger);
+    }
+}
+
+// TrialBalance.java
+class TrialBalance {
+    private final long customerTotal;
+    private final long[] generalLedger;
+
+    TrialBalance(long customerTotal, long[] generalLedger) {
+        this.customerTotal = customerTotal;
+        this.generalLedger = generalLedger;
+    }
+
+    public long getCustomerTotal() { return customerTotal; }
+    public long getGeneralLedgerBalance(GeneralLedgerAccount account) { return generalLedger[account.ordinal()]; }
+
+    public long getDifference() {
+        long sum = customerTotal;
+        for (long balance : generalLedger) {
+            sum += balance;
+        }
+        return sum;
+    }
+
+    public boolean isBalanced() { return getDifference() == 0; }
+}
+
+// Money.java
+// Monetary amounts throughout the banking model are plain longs holding cents, so
+// balances are exact and nothing is boxed. Arithmetic is overflow-checked, and
+// format() renders "1234.56" directly into a char buffer instead of going through
+// java.util.Formatter on every call.
+final class Money {
+    private Money() {}
+
+    public static long of(long dollars, int cents) {
+        return Math.addExact(Math.multiplyExact(dollars, 100), dollars < 0 ? -cents : cents);
+    }
+
+    public static long dollars(long dollars) {
+        return Math.multiplyExact(dollars, 100);
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public static String format(long cents) {
+        if (cents == Long.MIN_VALUE) {
+            return "-92233720368547758.08";
+        }
+        char[] buf = new char[22];
+        int pos = buf.length;
+        long value = Math.abs(cents);
+        buf[--pos] = (char) ('0' + value % 10);
+        value /= 10;
+        buf[--pos] = (char) ('0' + value % 10);
+        value /= 10;
+        buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (cents < 0) {
+            buf[--pos] = '-';
+        }
+        return new String(buf, pos, buf.length - pos);
+    }
 }
 
 // Main class to demonstrate the Banking System
@@ -368,55 +2713,165 @@ public class BankingSystem {
         Customer alice = new Customer("Alice Smith", "CUST001", "123 Main St");
         Customer bob = new Customer("Bob Johnson", "CUST002", "456 Oak Ave");
 
+        // --- 2b. Recover any previously journaled state and start logging changes ---
+        Path journalDir = null;
+        BankJournal journal = null;
+        try {
+            journalDir = Files.createTempDirectory("bank-journal");
+            journal = BankJournal.open(journalDir, nationalBank, Arrays.asList(alice, bob));
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, continuing in memory only: " + e.getMessage());
+        }
+
+        // --- 2c. Downstream consumers subscribe to the bank's operation events ---
+        final long[] largeWithdrawals = new long[1];
+        final long[] eventCounts = new long[BankingEventType.values().length];
+        BankingEventBus.Subscription fraudWatch = nationalBank.getEvents().subscribe("fraud", event -> {
+            if (event.getType() == BankingEventType.WITHDRAWAL && event.getAmount() >= Money.dollars(500)) {
+                largeWithdrawals[0]++;
+            }
+        });
+        BankingEventBus.Subscription reporting = nationalBank.getEvents().subscribe("reporting",
+                event -> eventCounts[event.getType().ordinal()]++);
+
         // --- 3. Open Accounts for Customers ---
-        Account aliceChecking = nationalBank.openAccount(alice, "Checking", 1000.00);
-        Account aliceSavings = nationalBank.openAccount(alice, "Savings", 5000.00);
-        Account bobChecking = nationalBank.openAccount(bob, "Checking", 200.00);
+        Account aliceChecking = nationalBank.openAccount(alice, "Checking", Money.dollars(1000));
+        Account aliceSavings = nationalBank.openAccount(alice, "Savings", Money.dollars(5000));
+        Account bobChecking = nationalBank.openAccount(bob, "Checking", Money.dollars(200));
 
         System.out.println("\n--- Customer Operations ---");
 
         // Alice transfers funds
-        alice.transferFunds(aliceChecking, aliceSavings, 200.00);
-        System.out.println("Alice's checking balance: $" + String.format("%.2f", aliceChecking.getBalance()));
-        System.out.println("Alice's savings balance: $" + String.format("%.2f", aliceSavings.getBalance()));
+        alice.transferFunds(aliceChecking, aliceSavings, Money.dollars(200));
+        System.out.println("Alice's checking balance: $" + Money.format(aliceChecking.getBalance()));
+        System.out.println("Alice's savings balance: $" + Money.format(aliceSavings.getBalance()));
 
         // Bob tries to withdraw more than he has
-        bobChecking.withdraw(300.00); // Should fail
+        bobChecking.withdraw(Money.dollars(300)); // Should fail
 
         // Bob requests a loan
-        Loan bobLoan = bob.requestLoan(10000.00);
+        Loan bobLoan = bob.requestLoan(Money.dollars(10000));
 
         System.out.println("\n--- Loan Operations ---");
-        // Bank approves Bob's loan
+        // Bank books and approves Bob's loan
+        nationalBank.getLoanPortfolio().add(bobLoan);
         bobLoan.approveLoan();
 
-        // Simulate Bob repaying the loan
-        bobLoan.repayLoan(1000.00);
-        bobLoan.repayLoan(9000.00); // Repay remaining
+        // Simulate Bob repaying part of the loan, then a month of interest accruing
+        bobLoan.repayLoan(Money.dollars(1000));
+        long interest = nationalBank.getLoanPortfolio().accrueInterest(30);
+        System.out.println("Nightly accrual added $" + Money.format(interest) + " interest; Bob now owes $" + Money.format(bobLoan.getLoanAmount()));
+
+        AmortizationSchedule schedule = nationalBank.getLoanPortfolio().schedule(bobLoan, 12);
+        for (int month = 0; month < 3; month++) {
+            System.out.println("Month " + (month + 1) + ": pay $" + Money.format(schedule.getPayment(month))
+                    + " (interest $" + Money.format(schedule.getInterest(month)) + "), remaining $" + Money.format(schedule.getRemaining(month)));
+        }
+        bobLoan.repayLoan(bobLoan.getLoanAmount()); // Repay remaining
+
+        // Alice applies through the underwriter, which prices the loan from her running aggregates
+        LoanUnderwriter underwriter = new LoanUnderwriter(0.04, 3.0);
+        Loan aliceLoan = alice.requestLoan(Money.dollars(5000), underwriter);
+        if (aliceLoan != null) {
+            aliceLoan.disburseTo(aliceSavings);
+        }
+        alice.requestLoan(Money.dollars(50000), underwriter); // Should be declined
 
         System.out.println("\n--- ATM Operations ---");
-        ATM downtownATM = new ATM("Downtown Kiosk", nationalBank);
+        ATM downtownATM = new ATM("Downtown Kiosk", nationalBank, Money.dollars(20000));
 
         // Alice uses the ATM to withdraw
-        downtownATM.dispenseCash(aliceChecking, 150.00);
-        downtownATM.dispenseCash(aliceChecking, 1000.00); // Should fail due to insufficient funds after previous withdrawal
+        downtownATM.dispenseCash(aliceChecking, Money.dollars(150));
+        downtownATM.dispenseCash(aliceChecking, Money.dollars(1000)); // Should fail due to insufficient funds after previous withdrawal
 
         // Bob uses the ATM to deposit
-        downtownATM.acceptDeposit(bobChecking, 500.00);
+        downtownATM.acceptDeposit(bobChecking, Money.dollars(500));
+        System.out.println("Cash left in " + downtownATM.getLocation() + ": $" + Money.format(downtownATM.getCashOnHand()));
+        System.out.println("ATM channel traffic: " + nationalBank.getChannelLedger().getMetrics());
+
+        // An online channel retries the same deposit; the bank executes it only once
+        Transaction onlineDeposit = new Transaction("TXN-ONLINE01", Money.dollars(40), "Deposit", bobChecking);
+        nationalBank.processTransaction(onlineDeposit);
+        nationalBank.processTransaction(onlineDeposit); // Retry after a timeout
+
+        // A batch of transfers posted in one call; each is an atomic, balanced entry
+        boolean[] posted = nationalBank.getPostingEngine().postAll(Arrays.asList(
+                LedgerEntry.transfer(aliceSavings, bobChecking, Money.dollars(100)),
+                LedgerEntry.transfer(bobChecking, aliceChecking, Money.dollars(100000)))); // Should fail
+        System.out.println("Batch posting results: " + posted[0] + ", " + posted[1]);
 
         System.out.println("\n--- Final Balances ---");
-        System.out.println("Alice's final checking balance: $" + String.format("%.2f", aliceChecking.getBalance()));
-        System.out.println("Alice's final savings balance: $" + String.format("%.2f", aliceSavings.getBalance()));
-        System.out.println("Bob's final checking balance: $" + String.format("%.2f", bobChecking.getBalance()));
+        System.out.println("Alice's final checking balance: $" + Money.format(aliceChecking.getBalance()));
+        System.out.println("Alice's final savings balance: $" + Money.format(aliceSavings.getBalance()));
+        System.out.println("Bob's final checking balance: $" + Money.format(bobChecking.getBalance()));
+        System.out.println("Alice's total across accounts: $" + Money.format(alice.getTotalBalance()));
+        BalanceSnapshot bankTotals = nationalBank.getBalances().snapshot();
+        System.out.println("Bank deposits: $" + Money.format(bankTotals.getTotal()) + " (checking $" + Money.format(bankTotals.getTotal("Checking"))
+                + ", savings $" + Money.format(bankTotals.getTotal("Savings")) + ")");
 
         // Show transactions recorded for Alice's checking account
         System.out.println("\n--- Transactions for Alice's Checking Account ---");
         for (Transaction txn : aliceChecking.getTransactions()) {
-            System.out.println("ID: " + txn.getTransactionId() + ", Type: " + txn.getTransactionType() + ", Amount: $" + String.format("%.2f", txn.getAmount()) + ", Date: " + txn.getDate());
+            System.out.println("ID: " + txn.getTransactionId() + ", Type: " + txn.getTransactionType() + ", Amount: $" + Money.format(txn.getAmount()) + ", Date: " + txn.getDate());
+        }
+
+        // Range query over the last hour straight from the columnar history, without materializing Transactions
+        long now = System.currentTimeMillis();
+        final long[] withdrawn = new long[1];
+        aliceChecking.getHistory().forEachBetween(now - 60 * 60 * 1000L, now + 1, (id, timestamp, amountCents, type) -> {
+            if (type == TransactionHistory.WITHDRAWAL) {
+                withdrawn[0] += amountCents;
+            }
+        });
+        System.out.println("Withdrawn from Alice's checking in the last hour: $" + Money.format(withdrawn[0]));
+
+        // End-of-day trial balance over every account
+        TrialBalance trial = nationalBank.getPostingEngine().trialBalance(nationalBank.getAccounts());
+        System.out.println("\nTrial balance: customers $" + Money.format(trial.getCustomerTotal())
+                + ", cash $" + Money.format(trial.getGeneralLedgerBalance(GeneralLedgerAccount.CASH))
+                + ", loans $" + Money.format(trial.getGeneralLedgerBalance(GeneralLedgerAccount.LOANS_RECEIVABLE))
+                + (trial.isBalanced() ? " - balanced" : " - OUT OF BALANCE by $" + Money.format(trial.getDifference())));
+
+        // Generate this month's statements
+        System.out.println("\n--- Monthly Statements ---");
+        try {
+            Path statementDir = Files.createTempDirectory("statements");
+            int written = new StatementGenerator(statementDir).generate(nationalBank, YearMonth.now());
+            System.out.println(written + " statements written to " + statementDir);
+        } catch (IOException e) {
+            System.out.println("Statement generation failed: " + e.getMessage());
+        }
+
+        // Snapshot the balances, then show that a fresh bank recovers them from disk
+        if (journal != null) {
+            try {
+                journal.snapshot();
+                bobChecking.deposit(Money.dollars(25)); // Lands in the log tail after the snapshot
+                journal.close();
+                Bank recoveredBank = new Bank(nationalBank.getName(), nationalBank.getLocation());
+                BankJournal.open(journalDir, recoveredBank, Arrays.asList(new Customer("Bob Johnson", "CUST002", "456 Oak Ave"))).close();
+                Account recovered = recoveredBank.findAccount(bobChecking.getAccountNumber());
+                System.out.println("Recovered Bob's checking balance: $" + Money.format(recovered.getBalance()));
+                TrialBalance recoveredTrial = recoveredBank.getPostingEngine().trialBalance(recoveredBank.getAccounts());
+                System.out.println("Recovered trial balance is " + (recoveredTrial.isBalanced() ? "balanced"
+                        : "OUT OF BALANCE by $" + Money.format(recoveredTrial.getDifference())));
+            } catch (IOException e) {
+                System.out.println("Journal error: " + e.getMessage());
+            }
         }
 
         // Close an account
         nationalBank.closeAccount(bobChecking);
         System.out.println("Is Bob's checking account still in the bank's list? " + nationalBank.getAccounts().contains(bobChecking));
+
+        // Let the subscribers drain, then report what they saw
+        fraudWatch.awaitCaughtUp(1000);
+        reporting.awaitCaughtUp(1000);
+        System.out.println("Events seen by reporting: " + Arrays.toString(BankingEventType.values()) + " = " + Arrays.toString(eventCounts));
+        System.out.println("Large withdrawals flagged by fraud watch: " + largeWithdrawals[0]);
+        fraudWatch.close();
+        reporting.close();
+        System.out.println("Accounts held by Alice: " + nationalBank.getAccountsByCustomer(alice.getCustomerId()).size());
+        System.out.println("Checking accounts at " + nationalBank.getName() + ": " + nationalBank.getAccountsByType("Checking").size());
     }
 }
@@ -1,8 +1,44 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.temporal.ChronoUnit;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 // =============================================================================
 // Enums (for Gender)
@@ -11,131 +47,2167 @@ enum Gender {
     MALE, FEMALE, OTHER
 }
 
+// =============================================================================
+// Collection Helpers
+// =============================================================================
+
+// Copy-on-write list for fields that many readers share and few writers change.
+// get() hands out the current immutable snapshot without copying or locking; every
+// write publishes a new snapshot with the next version number, so a caller can tell
+// cheaply whether a list changed since it last looked.
+final class VersionedList<T> {
+    private static final class Snapshot<T> {
+        final List<T> items;
+        final long version;
+
+        Snapshot(List<T> items, long version) {
+            this.items = items;
+            this.version = version;
+        }
+    }
+
+    private volatile Snapshot<T> current;
+
+    VersionedList(Collection<? extends T> initial) {
+        List<T> items = initial == null ? Collections.<T>emptyList() : Collections.unmodifiableList(new ArrayList<T>(initial));
+        this.current = new Snapshot<>(items, 0);
+    }
+
+    public List<T> get() { return current.items; }
+    public long getVersion() { return current.version; }
+    public boolean isEmpty() { return current.items.isEmpty(); }
+
+    public synchronized boolean add(T item) {
+        List<T> next = new ArrayList<>(current.items);
+        next.add(item);
+        publish(next);
+        return true;
+    }
+
+    public synchronized boolean addAll(Collection<? extends T> items) {
+        if (items.isEmpty()) {
+            return false;
+        }
+        List<T> next = new ArrayList<>(current.items.size() + items.size());
+        next.addAll(current.items);
+        next.addAll(items);
+        publish(next);
+        return true;
+    }
+
+    public synchronized boolean remove(T item) {
+        List<T> next = new ArrayList<>(current.items);
+        if (!next.remove(item)) {
+            return false;
+        }
+        publish(next);
+        return true;
+    }
+
+    private void publish(List<T> items) {
+        current = new Snapshot<>(Collections.unmodifiableList(items), current.version + 1);
+    }
+}
+
+// Immutable copy of a constructor argument, shared by every getter call afterwards.
+final class ImmutableLists {
+    private ImmutableLists() {}
+
+    static <T> List<T> copyOf(List<T> source) {
+        return source == null ? Collections.<T>emptyList() : Collections.unmodifiableList(new ArrayList<>(source));
+    }
+}
+
+// Canonical instances for the few values that repeat across many records (titles,
+// allergy, drug and lab test names), so a million patients allergic to penicillin hold
+// one "Penicillin" between them. Free text such as names, addresses and histories is
+// mostly unique and is not pooled. Entries are weak, so a value no record holds any more
+// (a patient dropped from the registry, say) is collected rather than kept by the pool.
+final class StringPool {
+    private static final Map<String, WeakReference<String>> POOL = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private StringPool() {}
+
+    static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (POOL) {
+            WeakReference<String> ref = POOL.get(value);
+            String existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            POOL.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    static List<String> internAll(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> interned = new ArrayList<>(values.size());
+        for (String value : values) {
+            interned.add(intern(value));
+        }
+        return interned;
+    }
+
+    static int size() { return POOL.size(); }
+}
+
+// Today's date for age and other day-granular derivations. Reading it is a field read
+// and a millisecond time check; LocalDate.now() runs once a day (and whenever the
+// clock is swapped, e.g. for a fixed reporting date).
+final class HospitalClock {
+    private static final class Day {
+        final LocalDate date;
+        final long validUntilMillis;
+
+        Day(LocalDate date, long validUntilMillis) {
+            this.date = date;
+            this.validUntilMillis = validUntilMillis;
+        }
+    }
+
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile Day current = new Day(LocalDate.MIN, Long.MIN_VALUE);
+
+    private HospitalClock() {}
+
+    static LocalDate today() {
+        Day day = current;
+        Clock source = clock;
+        long now = source.millis();
+        if (now < day.validUntilMillis) {
+            return day.date;
+        }
+        LocalDate date = LocalDate.now(source);
+        long midnight = date.plusDays(1).atStartOfDay(source.getZone()).toInstant().toEpochMilli();
+        current = new Day(date, midnight);
+        return date;
+    }
+
+    static void setClock(Clock newClock) {
+        clock = newClock;
+        current = new Day(LocalDate.MIN, Long.MIN_VALUE);
+    }
+}
+
 // =============================================================================
 // Base Classes
 // =============================================================================
 
-class Person {
-    private String title;
-    private String givenName;
-    private String middleName;
-    private String familyName;
-    private LocalDate birthDate;
-    private Gender gender;
-    private String homeAddress;
-    private String phone;
+class Person {
+    private String title;
+    private String givenName;
+    private String middleName;
+    private String familyName;
+    private LocalDate birthDate;
+    private Gender gender;
+    private String homeAddress;
+    private String phone;
+    private volatile String fullName; // Memoized; cleared by rename
+
+    public Person(String title, String givenName, String middleName, String familyName,
+                  LocalDate birthDate, Gender gender, String homeAddress, String phone) {
+        this.title = StringPool.intern(title);
+        this.givenName = givenName;
+        this.middleName = middleName;
+        this.familyName = familyName;
+        this.birthDate = birthDate;
+        this.gender = gender;
+        this.homeAddress = homeAddress;
+        this.phone = phone;
+        System.out.println("Person " + getFullName() + " created.");
+    }
+
+    // Getters
+    public String getTitle() { return title; }
+    public String getGivenName() { return givenName; }
+    public String getMiddleName() { return middleName; }
+    public String getFamilyName() { return familyName; }
+    public LocalDate getBirthDate() { return birthDate; } // Public getter for birthDate
+    public Gender getGender() { return gender; }
+    public String getHomeAddress() { return homeAddress; }
+    public String getPhone() { return phone; }
+
+    // Changes the name parts; the memoized full name is rebuilt on next use
+    public synchronized void rename(String givenName, String middleName, String familyName) {
+        this.givenName = givenName;
+        this.middleName = middleName;
+        this.familyName = familyName;
+        this.fullName = null;
+    }
+
+    // Derived attribute: /name: FullName
+    public String getFullName() {
+        String name = fullName;
+        if (name == null) {
+            synchronized (this) {
+                if (fullName == null) {
+                    fullName = buildFullName();
+                }
+                name = fullName;
+            }
+        }
+        return name;
+    }
+
+    private String buildFullName() {
+        StringBuilder fullName = new StringBuilder();
+        if (givenName != null && !givenName.isEmpty()) fullName.append(givenName);
+        if (middleName != null && !middleName.isEmpty()) {
+            if (fullName.length() > 0) fullName.append(" ");
+            fullName.append(middleName);
+        }
+        if (familyName != null && !familyName.isEmpty()) {
+            if (fullName.length() > 0) fullName.append(" ");
+            fullName.append(familyName);
+        }
+        return fullName.toString();
+    }
+
+    // Other potential methods for a Person (e.g., updateContactInfo)
+}
+
+class Hospital {
+    private String name; // {id}
+    private String address; // /address - derived from name or separate
+    private String phone; // Phone
+
+    // Composition: Hospital has Department (1-to-1 as per diagram, though unusual for real hospitals)
+    private Department department;
+
+    // Every department by name, the main one included. Each keeps its own staff, census
+    // and locks, so work in one department never waits on another.
+    private final ConcurrentMap<String, Department> departments = new ConcurrentHashMap<>();
+
+    // Association: Hospital employs Persons. Nobody is added here directly: it counts in
+    // the department directories and the one below, each person listed once.
+    private final StaffDirectory employedPersons = new StaffDirectory();
+
+    // Members outside any department (patients considered "members" of the hospital system,
+    // staff not yet placed). Department staff live only in their department's directory.
+    private final StaffDirectory unassigned = new StaffDirectory(employedPersons);
+
+    private PatientRegistry patients;
+
+    public Hospital(String name, String address, String phone) {
+        this.name = name;
+        this.address = address;
+        this.phone = phone;
+        this.patients = new PatientRegistry();
+        System.out.println("Hospital '" + name + "' created.");
+    }
+
+    // Getters
+    public String getName() { return name; }
+    public String getAddress() { return address; }
+    public String getPhone() { return phone; }
+    public Department getDepartment() { return department; }
+    public Department getDepartment(String departmentName) { return departments.get(departmentName); }
+    public Collection<Department> getDepartments() { return Collections.unmodifiableCollection(departments.values()); }
+    public List<Person> getEmployedPersons() { return employedPersons.snapshot(); } // Read-only, not copied per call
+    public StaffQueries getStaffDirectory() { return employedPersons; }
+    public PatientRegistry getPatientRegistry() { return patients; }
+
+    // Setters for composition
+    public void setDepartment(Department department) {
+        if (this.department != null && this.department != department) {
+            System.out.println("Warning: Hospital already has a department. Replacing.");
+            // The replaced department leaves the hospital: its staff and census stop counting here
+            if (departments.remove(this.department.getName(), this.department)) {
+                this.department.getStaff().detach();
+            }
+        }
+        this.department = department;
+        Department displaced = departments.put(department.getName(), department);
+        if (displaced != null && displaced != department) {
+            displaced.getStaff().detach();
+        }
+        department.getStaff().attachTo(employedPersons);
+        System.out.println("Department linked to Hospital " + name);
+    }
+
+    // False if the hospital already has a department with that name
+    public boolean addDepartment(Department department) {
+        if (departments.putIfAbsent(department.getName(), department) != null) {
+            return false;
+        }
+        department.getStaff().attachTo(employedPersons);
+        System.out.println("Department '" + department.getName() + "' added to Hospital " + name);
+        return true;
+    }
+
+    // Patients in care across all departments
+    public long getOccupancy() {
+        long occupancy = 0;
+        for (Department dept : departments.values()) {
+            occupancy += dept.getCensus().getOccupancy();
+        }
+        return occupancy;
+    }
+
+    // Business Methods
+    public void addEmployee(Person person) {
+        if (!employedPersons.contains(person) && unassigned.add(person)) {
+            System.out.println(person.getFullName() + " added as an employee/member to " + name);
+        }
+    }
+
+    // Staff join through a department; the hospital-wide directory reads the department's
+    public void addEmployee(Staff member, Department department) {
+        if (departments.get(department.getName()) != department) {
+            throw new IllegalArgumentException(department.getName() + " is not a department of " + name);
+        }
+        if (department.assignStaff(member)) {
+            unassigned.remove(member);
+            System.out.println(member.getFullName() + " added as an employee/member to " + name + " in " + department.getName());
+        }
+    }
+
+    // Leaves the hospital altogether, every department included
+    public void removeEmployee(Person person) {
+        boolean removed = unassigned.remove(person);
+        for (Department dept : departments.values()) {
+            removed |= dept.getStaff().remove(person);
+        }
+        if (removed) {
+            System.out.println(person.getFullName() + " removed from " + name + " employees/members.");
+        }
+    }
+
+    public void registerPatient(Patient patient) {
+        if (patients.register(patient)) {
+            System.out.println(patient.getFullName() + " (ID: " + patient.getId() + ") registered with " + name);
+        } else {
+            System.out.println("Patient ID " + patient.getId() + " is already registered with " + name);
+        }
+    }
+
+    public void displayHospitalInfo() {
+        System.out.println("\n--- Hospital Info: " + name + " ---");
+        System.out.println("Address: " + address);
+        System.out.println("Phone: " + phone);
+        System.out.println("Number of employees/members: " + employedPersons.size());
+        if (department != null) {
+            System.out.println("Main Department: " + department.getName());
+        }
+        System.out.println("------------------------------");
+    }
+}
+
+// Hospital membership with O(1) lookups and prebuilt indexes by role (every class in
+// the person's hierarchy below Person, so both Doctor and OperationsStaff queries work),
+// by doctor specialty and by staff language. Index buckets are concurrent sets updated in
+// place and handed out as unmodifiable views, so adding a member costs only its own index
+// entries and readers never copy and never lock. The full member list is an immutable
+// snapshot rebuilt at most once per version, on the first read after a change.
+//
+// A directory can be attached to a wider one (a department's to its hospital's). Changes
+// here are then counted into the wider directory, which lists a person once however many
+// of its member directories hold them, so the hospital-wide indexes are kept up to date
+// without a second list to maintain and without a lock shared between departments.
+class StaffDirectory implements StaffQueries {
+    private final ConcurrentMap<Person, Integer> members = new ConcurrentHashMap<>(); // Directories listing each person; 1 unless wider
+    private final ConcurrentMap<Class<?>, Set<Person>> byRole = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Doctor>> bySpecialty = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Staff>> byLanguage = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.<Person>emptyList());
+    private StaffDirectory wider; // Guarded by this
+
+    private static final class Snapshot {
+        final long version;
+        final List<Person> members;
+
+        Snapshot(long version, List<Person> members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+    public StaffDirectory() {
+    }
+
+    // A directory whose members are also counted into the wider one
+    public StaffDirectory(StaffDirectory wider) {
+        this.wider = wider;
+    }
+
+    public synchronized boolean add(Person person) {
+        if (members.putIfAbsent(person, 1) != null) {
+            return false;
+        }
+        index(person);
+        version.incrementAndGet();
+        if (wider != null) {
+            wider.retain(person);
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(Person person) {
+        if (members.remove(person) == null) {
+            return false;
+        }
+        unindex(person);
+        version.incrementAndGet();
+        if (wider != null) {
+            wider.release(person);
+        }
+        return true;
+    }
+
+    // Starts counting this directory's members into the wider one
+    public synchronized void attachTo(StaffDirectory wider) {
+        if (this.wider == wider) {
+            return;
+        }
+        if (this.wider != null) {
+            throw new IllegalStateException("Directory is already attached to another directory");
+        }
+        this.wider = wider;
+        for (Person person : members.keySet()) {
+            wider.retain(person);
+        }
+    }
+
+    // Takes this directory's members back out of the wider one
+    public synchronized void detach() {
+        if (wider == null) {
+            return;
+        }
+        for (Person person : members.keySet()) {
+            wider.release(person);
+        }
+        wider = null;
+    }
+
+    // One more attached directory lists the person; indexed on the first. The per-key
+    // compute makes the count and the index change one step for that person only.
+    private void retain(Person person) {
+        members.compute(person, (p, count) -> {
+            if (count == null) {
+                index(p);
+                return 1;
+            }
+            return count + 1;
+        });
+        version.incrementAndGet();
+    }
+
+    private void release(Person person) {
+        members.computeIfPresent(person, (p, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            unindex(p);
+            return null;
+        });
+        version.incrementAndGet();
+    }
+
+    public boolean contains(Person person) {
+        return members.containsKey(person);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    // Immutable list of all members; rebuilt at most once per change
+    public List<Person> snapshot() {
+        Snapshot current = snapshot;
+        long latest = version.get();
+        if (current.version != latest) {
+            // Version read before the members, so a change made meanwhile forces another rebuild
+            current = new Snapshot(latest, Collections.unmodifiableList(new ArrayList<>(members.keySet())));
+            snapshot = current;
+        }
+        return current.members;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Person> Set<T> getByRole(Class<T> role) {
+        Set<Person> bucket = byRole.get(role);
+        return bucket == null ? Collections.<T>emptySet() : (Set<T>) Collections.unmodifiableSet(bucket);
+    }
+
+    public Set<Doctor> getDoctorsBySpecialty(String specialty) {
+        Set<Doctor> bucket = bySpecialty.get(key(specialty));
+        return bucket == null ? Collections.<Doctor>emptySet() : Collections.unmodifiableSet(bucket);
+    }
+
+    public Set<Staff> getStaffByLanguage(String language) {
+        Set<Staff> bucket = byLanguage.get(key(language));
+        return bucket == null ? Collections.<Staff>emptySet() : Collections.unmodifiableSet(bucket);
+    }
+
+    private void index(Person person) {
+        for (Class<?> role = person.getClass(); role != Person.class && role != Object.class; role = role.getSuperclass()) {
+            bucket(byRole, role).add(person);
+        }
+        if (person instanceof Staff) {
+            Staff staff = (Staff) person;
+            for (String language : staff.getLanguages()) {
+                bucket(byLanguage, key(language)).add(staff);
+            }
+        }
+        if (person instanceof Doctor) {
+            Doctor doctor = (Doctor) person;
+            for (String specialty : doctor.getSpecialties()) {
+                bucket(bySpecialty, key(specialty)).add(doctor);
+            }
+        }
+    }
+
+    // Emptied buckets stay in place, so a concurrent add never lands in a dropped set
+    private void unindex(Person person) {
+        for (Class<?> role = person.getClass(); role != Person.class && role != Object.class; role = role.getSuperclass()) {
+            bucket(byRole, role).remove(person);
+        }
+        if (person instanceof Staff) {
+            for (String language : ((Staff) person).getLanguages()) {
+                bucket(byLanguage, key(language)).remove(person);
+            }
+        }
+        if (person instanceof Doctor) {
+            for (String specialty : ((Doctor) person).getSpecialties()) {
+                bucket(bySpecialty, key(specialty)).remove(person);
+            }
+        }
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase();
+    }
+
+    private static <K, T> Set<T> bucket(ConcurrentMap<K, Set<T>> index, K key) {
+        Set<T> bucket = index.get(key);
+        if (bucket == null) {
+            Set<T> created = ConcurrentHashMap.newKeySet();
+            bucket = index.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+}
+
+// The read side of a staff directory, as handed out for a whole hospital
+interface StaffQueries {
+    boolean contains(Person person);
+    int size();
+    List<Person> snapshot();
+    <T extends Person> Set<T> getByRole(Class<T> role);
+    Set<Doctor> getDoctorsBySpecialty(String specialty);
+    Set<Staff> getStaffByLanguage(String language);
+}
+
+class Department {
+    private String name; // Assuming a name for the department
+    private final AdmissionCensus census = new AdmissionCensus();
+    private final StaffDirectory staff = new StaffDirectory(); // Staff assigned to this department only
+
+    public Department(String name) {
+        this.name = name;
+        System.out.println("Department '" + name + "' created.");
+    }
+
+    public String getName() { return name; }
+    public AdmissionCensus getCensus() { return census; }
+    public StaffDirectory getStaff() { return staff; }
+
+    public boolean assignStaff(Staff member) { return staff.add(member); }
+    public boolean unassignStaff(Staff member) { return staff.remove(member); }
+}
+
+// Many hospitals in one process. State is sharded the way the model is: the network
+// only maps names to hospitals, each hospital only maps names to departments, and
+// staffing and admissions live in the department, so each department's StaffDirectory
+// and AdmissionCensus is the lock scope for changes there.
+class HospitalNetwork {
+    private final String name;
+    private final ConcurrentMap<String, Hospital> hospitals = new ConcurrentHashMap<>();
+
+    public HospitalNetwork(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+    public Hospital getHospital(String hospitalName) { return hospitals.get(hospitalName); }
+    public Collection<Hospital> getHospitals() { return Collections.unmodifiableCollection(hospitals.values()); }
+
+    // False if the network already has a hospital with that name
+    public boolean addHospital(Hospital hospital) {
+        return hospitals.putIfAbsent(hospital.getName(), hospital) == null;
+    }
+
+    public Department findDepartment(String hospitalName, String departmentName) {
+        Hospital hospital = hospitals.get(hospitalName);
+        return hospital == null ? null : hospital.getDepartment(departmentName);
+    }
+
+    // The hospital a patient is registered with, or null
+    public Hospital findPatientHospital(String patientId) {
+        for (Hospital hospital : hospitals.values()) {
+            if (hospital.getPatientRegistry().findById(patientId) != null) {
+                return hospital;
+            }
+        }
+        return null;
+    }
+
+    public long getOccupancy() {
+        long occupancy = 0;
+        for (Hospital hospital : hospitals.values()) {
+            occupancy += hospital.getOccupancy();
+        }
+        return occupancy;
+    }
+
+    // Doctors of a specialty across every hospital, each listed once
+    public List<Doctor> findDoctorsBySpecialty(String specialty) {
+        Set<Doctor> doctors = new LinkedHashSet<>();
+        for (Hospital hospital : hospitals.values()) {
+            doctors.addAll(hospital.getStaffDirectory().getDoctorsBySpecialty(specialty));
+        }
+        return new ArrayList<>(doctors);
+    }
+}
+
+// One day of a department's census
+class CensusDay {
+    private final LocalDate date;
+    private final long admissions;
+    private final long discharges;
+    private final long occupancy; // Patients in the department at the end of the day
+
+    public CensusDay(LocalDate date, long admissions, long discharges, long occupancy) {
+        this.date = date;
+        this.admissions = admissions;
+        this.discharges = discharges;
+        this.occupancy = occupancy;
+    }
+
+    public LocalDate getDate() { return date; }
+    public long getAdmissions() { return admissions; }
+    public long getDischarges() { return discharges; }
+    public long getOccupancy() { return occupancy; }
+
+    @Override
+    public String toString() {
+        return date + ": " + admissions + " admitted, " + discharges + " discharged, " + occupancy + " in care";
+    }
+}
+
+// Admission and discharge counters per day, kept up to date as the front desk checks
+// patients in and out, so census questions cost one step per day asked about rather
+// than a walk over every patient. Current patients are kept with their admission date,
+// which stops a patient from being counted in twice and gives the length of each stay.
+class AdmissionCensus {
+    private static final class DayCounts {
+        final LongAdder admissions = new LongAdder();
+        final LongAdder discharges = new LongAdder();
+    }
+
+    private final ConcurrentSkipListMap<Long, DayCounts> days = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LocalDate> inCare = new ConcurrentHashMap<>(); // Patient ID to admission date
+
+    // False if the patient is already in care here
+    public boolean admit(Patient patient, LocalDate date) {
+        if (inCare.putIfAbsent(patient.getId(), date) != null) {
+            return false;
+        }
+        dayOf(date).admissions.increment();
+        return true;
+    }
+
+    // The date the patient was admitted on, or null if they are not in care here
+    public LocalDate discharge(Patient patient, LocalDate date) {
+        LocalDate admitted = inCare.remove(patient.getId());
+        if (admitted != null) {
+            dayOf(date).discharges.increment();
+        }
+        return admitted;
+    }
+
+    public LocalDate getAdmissionDate(Patient patient) { return inCare.get(patient.getId()); }
+
+    public int getOccupancy() { return inCare.size(); }
+
+    public long admissionsOn(LocalDate date) {
+        DayCounts counts = days.get(date.toEpochDay());
+        return counts == null ? 0 : counts.admissions.sum();
+    }
+
+    // Admissions over the `days` days ending with `end`
+    public long admissionsInWindow(LocalDate end, int days) {
+        long total = 0;
+        for (DayCounts counts : window(end.minusDays(days - 1L), end).values()) {
+            total += counts.admissions.sum();
+        }
+        return total;
+    }
+
+    public double averageDailyAdmissions(LocalDate end, int days) {
+        return days <= 0 ? 0.0 : (double) admissionsInWindow(end, days) / days;
+    }
+
+    // Patients in care at the end of the date
+    public long occupancyAt(LocalDate date) {
+        long occupancy = 0;
+        for (DayCounts counts : days.headMap(date.toEpochDay(), true).values()) {
+            occupancy += counts.admissions.sum() - counts.discharges.sum();
+        }
+        return occupancy;
+    }
+
+    // One entry per date from `from` to `to` inclusive, quiet days included
+    public List<CensusDay> dailyRollup(LocalDate from, LocalDate to) {
+        List<CensusDay> rollup = new ArrayList<>();
+        long occupancy = occupancyAt(from.minusDays(1));
+        Map<Long, DayCounts> window = window(from, to);
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            DayCounts counts = window.get(date.toEpochDay());
+            long admitted = counts == null ? 0 : counts.admissions.sum();
+            long discharged = counts == null ? 0 : counts.discharges.sum();
+            occupancy += admitted - discharged;
+            rollup.add(new CensusDay(date, admitted, discharged, occupancy));
+        }
+        return rollup;
+    }
+
+    private Map<Long, DayCounts> window(LocalDate from, LocalDate to) {
+        return days.subMap(from.toEpochDay(), true, to.toEpochDay(), true);
+    }
+
+    private DayCounts dayOf(LocalDate date) {
+        return days.computeIfAbsent(date.toEpochDay(), d -> new DayCounts());
+    }
+}
+
+// Patients by ID, plus a sorted name index answering prefix searches on either the
+// full name ("charles b") or the family name ("brown"). Index keys are the lowercased
+// name and the patient ID joined by a NUL, so namesakes get separate entries and a
+// prefix search is one range scan of the skip list.
+class PatientRegistry {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final ConcurrentMap<String, Patient> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Patient> byName = new ConcurrentSkipListMap<>();
+
+    // False if another patient already has this ID
+    public boolean register(Patient patient) {
+        if (byId.putIfAbsent(patient.getId(), patient) != null) {
+            return false;
+        }
+        for (String key : nameKeys(patient)) {
+            byName.put(key, patient);
+        }
+        return true;
+    }
+
+    public Patient remove(String id) {
+        Patient patient = byId.remove(id);
+        if (patient != null) {
+            for (String key : nameKeys(patient)) {
+                byName.remove(key, patient);
+            }
+        }
+        return patient;
+    }
+
+    public Patient findById(String id) { return byId.get(id); }
+    public int size() { return byId.size(); }
+
+    // Renames a registered patient and moves its name index entries to match
+    public void rename(Patient patient, String givenName, String middleName, String familyName) {
+        synchronized (patient) {
+            boolean registered = byId.get(patient.getId()) == patient;
+            if (registered) {
+                for (String key : nameKeys(patient)) {
+                    byName.remove(key, patient);
+                }
+            }
+            patient.rename(givenName, middleName, familyName);
+            if (registered) {
+                for (String key : nameKeys(patient)) {
+                    byName.put(key, patient);
+                }
+            }
+        }
+    }
+
+    // Up to `limit` patients whose full or family name starts with the prefix, in name order
+    public List<Patient> searchByNamePrefix(String prefix, int limit) {
+        String from = prefix.trim().toLowerCase(Locale.ROOT);
+        Set<Patient> matches = new LinkedHashSet<>();
+        for (Patient patient : byName.subMap(from, true, from + Character.MAX_VALUE, true).values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            matches.add(patient);
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private static List<String> nameKeys(Patient patient) {
+        String suffix = KEY_SEPARATOR + patient.getId();
+        String fullName = patient.getFullName().toLowerCase(Locale.ROOT);
+        String familyName = patient.getFamilyName() == null ? "" : patient.getFamilyName().toLowerCase(Locale.ROOT);
+        if (familyName.isEmpty() || fullName.startsWith(familyName)) {
+            return Collections.singletonList(fullName + suffix);
+        }
+        return Arrays.asList(fullName + suffix, familyName + suffix);
+    }
+}
+
+// =============================================================================
+// Medication Safety
+// =============================================================================
+
+// Drug and allergen names interned to dense int codes, with one BitSet per code of
+// everything it must not be combined with: the allergens that contraindicate a drug and
+// the drugs it interacts with (drug interactions are stored both ways round). Writes
+// replace the affected BitSets instead of mutating them, so readers never lock. A whole
+// table is loaded with load(), which builds the new arrays privately and publishes them
+// once, instead of copying per addition and invalidating every patient profile each time.
+class InteractionTable {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+    private volatile BitSet[] conflicts = new BitSet[0];
+    private final AtomicLong version = new AtomicLong();
+
+    // Code for a name, assigning the next free one if it is new
+    public int codeOf(String name) {
+        String key = normalize(name);
+        Integer code = codes.get(key);
+        return code != null ? code : intern(key, name.trim());
+    }
+
+    // Code for a name already in the table, or -1
+    public int peekCode(String name) {
+        Integer code = codes.get(normalize(name));
+        return code != null ? code : -1;
+    }
+
+    public String nameOf(int code) { return names[code]; }
+    public long getVersion() { return version.get(); }
+
+    public synchronized void addAllergyConflict(String allergen, String drug) {
+        link(codeOf(drug), codeOf(allergen));
+        version.incrementAndGet();
+    }
+
+    public synchronized void addDrugInteraction(String drugA, String drugB) {
+        int a = codeOf(drugA);
+        int b = codeOf(drugB);
+        link(a, b);
+        link(b, a);
+        version.incrementAndGet();
+    }
+
+    // Allergen to the drugs it contraindicates, and drug to the drugs it interacts with.
+    // Loading n names with m conflicts is O(n + m), and the version moves only once.
+    public synchronized void load(Map<String, ? extends Collection<String>> allergyConflicts,
+                                  Map<String, ? extends Collection<String>> drugInteractions) {
+        Batch batch = new Batch();
+        for (Map.Entry<String, ? extends Collection<String>> entry : allergyConflicts.entrySet()) {
+            int allergen = batch.codeOf(entry.getKey());
+            for (String drug : entry.getValue()) {
+                batch.link(batch.codeOf(drug), allergen);
+            }
+        }
+        for (Map.Entry<String, ? extends Collection<String>> entry : drugInteractions.entrySet()) {
+            int a = batch.codeOf(entry.getKey());
+            for (String drug : entry.getValue()) {
+                int b = batch.codeOf(drug);
+                batch.link(a, b);
+                batch.link(b, a);
+            }
+        }
+        batch.publish();
+    }
+
+    // Conflicts of a code; the returned BitSet is never modified and must not be modified
+    BitSet conflictsOf(int code) {
+        BitSet[] current = conflicts;
+        return code >= 0 && code < current.length ? current[code] : null;
+    }
+
+    private synchronized int intern(String key, String displayName) {
+        Integer existing = codes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int code = names.length;
+        String[] grownNames = Arrays.copyOf(names, code + 1);
+        grownNames[code] = displayName;
+        BitSet[] grownConflicts = Arrays.copyOf(conflicts, code + 1);
+        grownConflicts[code] = new BitSet();
+        names = grownNames;
+        conflicts = grownConflicts;
+        codes.put(key, code);
+        return code;
+    }
+
+    private void link(int from, int to) {
+        BitSet updated = (BitSet) conflicts[from].clone();
+        updated.set(to);
+        BitSet[] next = conflicts.clone();
+        next[from] = updated;
+        conflicts = next;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Private copies for one load. Each published BitSet is cloned at most once, new codes
+    // stay unpublished until the arrays they index are, and readers see the old table
+    // until publish().
+    private final class Batch {
+        private final Map<String, Integer> added = new HashMap<>();
+        private final List<String> grownNames = new ArrayList<>(Arrays.asList(names));
+        private final List<BitSet> grownConflicts = new ArrayList<>(Arrays.asList(conflicts));
+        private final BitSet copied = new BitSet();
+
+        int codeOf(String name) {
+            String key = normalize(name);
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = added.get(key);
+            }
+            if (code == null) {
+                code = grownNames.size();
+                grownNames.add(name.trim());
+                grownConflicts.add(new BitSet());
+                copied.set(code);
+                added.put(key, code);
+            }
+            return code;
+        }
+
+        void link(int from, int to) {
+            if (!copied.get(from)) {
+                grownConflicts.set(from, (BitSet) grownConflicts.get(from).clone());
+                copied.set(from);
+            }
+            grownConflicts.get(from).set(to);
+        }
+
+        void publish() {
+            names = grownNames.toArray(new String[0]);
+            conflicts = grownConflicts.toArray(new BitSet[0]);
+            codes.putAll(added);
+            version.incrementAndGet();
+        }
+    }
+}
+
+// Outcome of one medication check; the conflicts are the patient's allergies or
+// active drugs that rule the medication out.
+class InteractionResult {
+    private final String medication;
+    private final List<String> conflicts;
+
+    public InteractionResult(String medication, List<String> conflicts) {
+        this.medication = medication;
+        this.conflicts = conflicts;
+    }
+
+    public String getMedication() { return medication; }
+    public List<String> getConflicts() { return conflicts; }
+    public boolean isSafe() { return conflicts.isEmpty(); }
+}
+
+// Checks a medication against a patient in one BitSet test: each patient's allergies and
+// prescriptions are turned into a bitset of codes once, and rebuilt only when the
+// patient's lists or the table change version.
+class InteractionChecker {
+    private static final class PatientProfile {
+        final long allergiesVersion;
+        final long prescriptionsVersion;
+        final long tableVersion;
+        final BitSet allergies;
+        final BitSet present; // Allergies and active drugs together
+
+        PatientProfile(long allergiesVersion, long prescriptionsVersion, long tableVersion, BitSet allergies, BitSet present) {
+            this.allergiesVersion = allergiesVersion;
+            this.prescriptionsVersion = prescriptionsVersion;
+            this.tableVersion = tableVersion;
+            this.allergies = allergies;
+            this.present = present;
+        }
+    }
+
+    private final InteractionTable table;
+    private final Map<Patient, PatientProfile> profiles = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public InteractionChecker(InteractionTable table) {
+        this.table = table;
+    }
+
+    public InteractionTable getTable() { return table; }
+
+    public InteractionResult check(Patient patient, String medication) {
+        PatientProfile profile = profileOf(patient);
+        int code = table.peekCode(medication);
+        if (code < 0) {
+            return new InteractionResult(medication, Collections.<String>emptyList());
+        }
+        BitSet conflicts = table.conflictsOf(code);
+        boolean allergic = profile.allergies.get(code);
+        if (!allergic && (conflicts == null || !conflicts.intersects(profile.present))) {
+            return new InteractionResult(medication, Collections.<String>emptyList());
+        }
+        // Conflict path: only here is it worth naming what clashed
+        List<String> found = new ArrayList<>();
+        if (allergic) {
+            found.add(table.nameOf(code));
+        }
+        if (conflicts != null) {
+            BitSet hits = (BitSet) conflicts.clone();
+            hits.and(profile.present);
+            for (int bit = hits.nextSetBit(0); bit >= 0; bit = hits.nextSetBit(bit + 1)) {
+                found.add(table.nameOf(bit));
+            }
+        }
+        return new InteractionResult(medication, Collections.unmodifiableList(found));
+    }
+
+    private PatientProfile profileOf(Patient patient) {
+        // Versions are read before the lists so a profile can only look staler than it is
+        long allergiesVersion = patient.getAllergiesVersion();
+        long prescriptionsVersion = patient.getPrescriptionsVersion();
+        long tableVersion = table.getVersion();
+        PatientProfile profile = profiles.get(patient);
+        if (profile != null && profile.allergiesVersion == allergiesVersion
+                && profile.prescriptionsVersion == prescriptionsVersion && profile.tableVersion == tableVersion) {
+            return profile;
+        }
+        // Names the table does not know cannot conflict with anything; they are left out
+        // rather than added, and picked up on the rebuild after the table changes
+        BitSet allergies = new BitSet();
+        for (String allergy : patient.getAllergies()) {
+            int code = table.peekCode(allergy);
+            if (code >= 0) {
+                allergies.set(code);
+            }
+        }
+        BitSet present = (BitSet) allergies.clone();
+        for (String drug : patient.getPrescriptions()) {
+            int code = table.peekCode(drug);
+            if (code >= 0) {
+                present.set(code);
+            }
+        }
+        profile = new PatientProfile(allergiesVersion, prescriptionsVersion, tableVersion, allergies, present);
+        profiles.put(patient, profile);
+        return profile;
+    }
+}
+
+// =============================================================================
+// Scheduling
+// =============================================================================
+
+class Appointment {
+    private final Patient patient;
+    private final Doctor doctor;
+    private final LocalDate date;
+    private final LocalTime time;
+    private final int slot;
+
+    public Appointment(Patient patient, Doctor doctor, LocalDate date, LocalTime time, int slot) {
+        this.patient = patient;
+        this.doctor = doctor;
+        this.date = date;
+        this.time = time;
+        this.slot = slot;
+    }
+
+    public Patient getPatient() { return patient; }
+    public Doctor getDoctor() { return doctor; }
+    public LocalDate getDate() { return date; }
+    public LocalTime getTime() { return time; }
+    public int getSlot() { return slot; }
+}
+
+// Doctor calendars as one 64-bit slot bitmap per doctor per day. Booking sets the
+// slot's bit with a compare-and-set, so any number of receptionists can book at once
+// and two of them can never both get the same slot. The doctors for a specialty come
+// from the hospital's staff directory.
+class AppointmentScheduler {
+    public static final int MAX_SLOTS_PER_DAY = Long.SIZE;
+
+    private final StaffQueries directory;
+    private final LocalTime dayStart;
+    private final int slotMinutes;
+    private final int slotsPerDay;
+    private final long fullDay;
+    private final ConcurrentMap<Doctor, ConcurrentMap<LocalDate, AtomicLong>> calendars = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Doctor, ConcurrentMap<Long, Appointment>> appointments = new ConcurrentHashMap<>();
+
+    public AppointmentScheduler(StaffQueries directory, LocalTime dayStart, int slotMinutes, int slotsPerDay) {
+        if (slotsPerDay < 1 || slotsPerDay > MAX_SLOTS_PER_DAY) {
+            throw new IllegalArgumentException("slotsPerDay must be between 1 and " + MAX_SLOTS_PER_DAY);
+        }
+        this.directory = directory;
+        this.dayStart = dayStart;
+        this.slotMinutes = slotMinutes;
+        this.slotsPerDay = slotsPerDay;
+        this.fullDay = slotsPerDay == Long.SIZE ? -1L : (1L << slotsPerDay) - 1;
+    }
+
+    public LocalTime timeOf(int slot) { return dayStart.plusMinutes((long) slot * slotMinutes); }
+
+    // Books the given slot; null if it is out of range or already taken
+    public Appointment book(Patient patient, Doctor doctor, LocalDate date, int slot) {
+        if (slot < 0 || slot >= slotsPerDay) {
+            return null;
+        }
+        AtomicLong day = dayOf(doctor, date);
+        long bit = 1L << slot;
+        long booked;
+        do {
+            booked = day.get();
+            if ((booked & bit) != 0) {
+                return null;
+            }
+        } while (!day.compareAndSet(booked, booked | bit));
+        return record(patient, doctor, date, slot);
+    }
+
+    // Books the doctor's earliest free slot that day; null if the day is full
+    public Appointment bookFirstFree(Patient patient, Doctor doctor, LocalDate date) {
+        AtomicLong day = dayOf(doctor, date);
+        while (true) {
+            long booked = day.get();
+            long free = ~booked & fullDay;
+            if (free == 0) {
+                return null;
+            }
+            int slot = Long.numberOfTrailingZeros(free);
+            if (day.compareAndSet(booked, booked | (1L << slot))) {
+                return record(patient, doctor, date, slot);
+            }
+        }
+    }
+
+    // Earliest free slot among all doctors with the specialty, searching up to `days`
+    // days from `from`, and books it; a slot lost to another booking is simply retried.
+    public Appointment bookNextFree(Patient patient, String specialty, LocalDate from, int days) {
+        while (true) {
+            Appointment candidate = findNextFree(specialty, from, days);
+            if (candidate == null) {
+                return null;
+            }
+            Appointment booked = book(patient, candidate.getDoctor(), candidate.getDate(), candidate.getSlot());
+            if (booked != null) {
+                return booked;
+            }
+        }
+    }
+
+    // Same search without booking; the result has no patient
+    public Appointment findNextFree(String specialty, LocalDate from, int days) {
+        Set<Doctor> doctors = directory.getDoctorsBySpecialty(specialty);
+        for (int offset = 0; offset < days; offset++) {
+            LocalDate date = from.plusDays(offset);
+            Doctor bestDoctor = null;
+            int bestSlot = slotsPerDay;
+            for (Doctor doctor : doctors) {
+                long free = ~bookedBits(doctor, date) & fullDay;
+                if (free != 0 && Long.numberOfTrailingZeros(free) < bestSlot) {
+                    bestSlot = Long.numberOfTrailingZeros(free);
+                    bestDoctor = doctor;
+                }
+            }
+            if (bestDoctor != null) {
+                return new Appointment(null, bestDoctor, date, timeOf(bestSlot), bestSlot);
+            }
+        }
+        return null;
+    }
+
+    public boolean cancel(Appointment appointment) {
+        ConcurrentMap<Long, Appointment> booked = appointments.get(appointment.getDoctor());
+        if (booked == null || !booked.remove(key(appointment.getDate(), appointment.getSlot()), appointment)) {
+            return false;
+        }
+        long bit = 1L << appointment.getSlot();
+        AtomicLong day = dayOf(appointment.getDoctor(), appointment.getDate());
+        long current;
+        do {
+            current = day.get();
+        } while (!day.compareAndSet(current, current & ~bit));
+        return true;
+    }
+
+    public int freeSlots(Doctor doctor, LocalDate date) {
+        return slotsPerDay - Long.bitCount(bookedBits(doctor, date));
+    }
+
+    private long bookedBits(Doctor doctor, LocalDate date) {
+        ConcurrentMap<LocalDate, AtomicLong> calendar = calendars.get(doctor);
+        AtomicLong day = calendar == null ? null : calendar.get(date);
+        return day == null ? 0L : day.get();
+    }
+
+    private AtomicLong dayOf(Doctor doctor, LocalDate date) {
+        return calendars.computeIfAbsent(doctor, d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(date, d -> new AtomicLong());
+    }
+
+    private Appointment record(Patient patient, Doctor doctor, LocalDate date, int slot) {
+        Appointment appointment = new Appointment(patient, doctor, date, timeOf(slot), slot);
+        appointments.computeIfAbsent(doctor, d -> new ConcurrentHashMap<>()).put(key(date, slot), appointment);
+        return appointment;
+    }
+
+    private static long key(LocalDate date, int slot) {
+        return date.toEpochDay() * MAX_SLOTS_PER_DAY + slot;
+    }
+}
+
+// =============================================================================
+// Rostering
+// =============================================================================
+
+enum ShiftPeriod {
+    DAY, EVENING, NIGHT
+}
+
+// Staff needed for one shift. Role, certification and location are hard rules that
+// decide who may fill it (a location can only be met by a doctor working there); the
+// language is met when at least one of the assigned staff speaks it.
+class ShiftRequirement {
+    private final DayOfWeek day;
+    private final ShiftPeriod period;
+    private final Class<? extends Staff> role;
+    private final int headcount;
+    private final String certification; // Optional
+    private final String language;      // Optional
+    private final String location;      // Optional
+
+    public ShiftRequirement(DayOfWeek day, ShiftPeriod period, Class<? extends Staff> role, int headcount,
+                            String certification, String language, String location) {
+        this.day = day;
+        this.period = period;
+        this.role = role;
+        this.headcount = headcount;
+        this.certification = certification;
+        this.language = language;
+        this.location = location;
+    }
+
+    public DayOfWeek getDay() { return day; }
+    public ShiftPeriod getPeriod() { return period; }
+    public Class<? extends Staff> getRole() { return role; }
+    public int getHeadcount() { return headcount; }
+    public String getCertification() { return certification; }
+    public String getLanguage() { return language; }
+    public String getLocation() { return location; }
+
+    // Index of the shift within the week, 0 .. 7 * periods - 1
+    int weekSlot() { return (day.getValue() - 1) * ShiftPeriod.values().length + period.ordinal(); }
+
+    boolean canBeFilledBy(Staff staff) {
+        if (!role.isInstance(staff)) {
+            return false;
+        }
+        if (certification != null && !staff.getCertifications().contains(certification)) {
+            return false;
+        }
+        return location == null || (staff instanceof Doctor && ((Doctor) staff).getLocations().contains(location));
+    }
+
+    @Override
+    public String toString() {
+        return day + " " + period + " " + role.getSimpleName() + " x" + headcount
+                + (certification != null ? " [" + certification + "]" : "")
+                + (language != null ? " [" + language + "]" : "")
+                + (location != null ? " @" + location : "");
+    }
+}
+
+class Roster {
+    private final List<ShiftRequirement> requirements;
+    private final List<List<Staff>> assigned; // Parallel to requirements
+    private final int penalty;
+
+    public Roster(List<ShiftRequirement> requirements, List<List<Staff>> assigned, int penalty) {
+        this.requirements = requirements;
+        this.assigned = assigned;
+        this.penalty = penalty;
+    }
+
+    public List<ShiftRequirement> getRequirements() { return requirements; }
+    public List<Staff> getAssigned(int requirement) { return assigned.get(requirement); }
+    // Zero when every rule is met
+    public int getPenalty() { return penalty; }
+
+    public void displayRoster() {
+        System.out.println("\n--- Roster (penalty " + penalty + ") ---");
+        for (int r = 0; r < requirements.size(); r++) {
+            List<String> names = new ArrayList<>();
+            for (Staff staff : assigned.get(r)) {
+                names.add(staff == null ? "(unfilled)" : staff.getFullName());
+            }
+            System.out.println(requirements.get(r) + ": " + String.join(", ", names));
+        }
+        System.out.println("------------------------------");
+    }
+}
+
+// Week rosters by local search. Each restart fills every position greedily from the
+// staff allowed to take it, then keeps trying single reassignments and accepts any
+// that do not make the roster worse. The penalty is scored incrementally from
+// per-staff shift counts and per-shift language counts, so a move costs O(1) however
+// large the hospital is. Restarts run in parallel with their own seeds and the best
+// roster wins.
+class RosterSolver {
+    static final int UNFILLED = 100;
+    static final int DOUBLE_BOOKED = 1000;
+    static final int OVER_WEEKLY_LIMIT = 50;
+    static final int LANGUAGE_UNMET = 20;
+
+    private final List<Staff> staff;
+    private final int maxShiftsPerWeek;
+
+    public RosterSolver(Collection<? extends Staff> staff, int maxShiftsPerWeek) {
+        this.staff = new ArrayList<>(staff);
+        this.maxShiftsPerWeek = maxShiftsPerWeek;
+    }
+
+    public Roster solve(List<ShiftRequirement> requirements, int restarts, int iterationsPerRestart, long seed) {
+        Problem problem = new Problem(requirements);
+        Search best = IntStream.range(0, restarts).parallel()
+                .mapToObj(restart -> {
+                    Search search = new Search(problem, new SplittableRandom(seed + restart));
+                    search.run(iterationsPerRestart);
+                    return search;
+                })
+                .min((a, b) -> Integer.compare(a.penalty, b.penalty))
+                .orElseThrow(() -> new IllegalArgumentException("restarts must be positive"));
+        return best.toRoster();
+    }
+
+    // Read-only facts shared by every restart
+    private final class Problem {
+        final List<ShiftRequirement> requirements;
+        final int[] positionRequirement; // Requirement of each position
+        final int[][] candidates;        // Staff indexes allowed to fill each requirement
+        final BitSet[] speakers;         // Staff who speak each requirement's language; null if none asked
+
+        Problem(List<ShiftRequirement> requirements) {
+            this.requirements = requirements;
+            int positions = 0;
+            for (ShiftRequirement requirement : requirements) {
+                positions += requirement.getHeadcount();
+            }
+            positionRequirement = new int[positions];
+            candidates = new int[requirements.size()][];
+            speakers = new BitSet[requirements.size()];
+            int position = 0;
+            for (int r = 0; r < requirements.size(); r++) {
+                ShiftRequirement requirement = requirements.get(r);
+                for (int h = 0; h < requirement.getHeadcount(); h++) {
+                    positionRequirement[position++] = r;
+                }
+                candidates[r] = IntStream.range(0, staff.size())
+                        .filter(i -> requirement.canBeFilledBy(staff.get(i))).toArray();
+                if (requirement.getLanguage() != null) {
+                    speakers[r] = new BitSet(staff.size());
+                    for (int i = 0; i < staff.size(); i++) {
+                        if (staff.get(i).getLanguages().contains(requirement.getLanguage())) {
+                            speakers[r].set(i);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final class Search {
+        private static final int SLOTS = 7 * 3; // Days times ShiftPeriod values
+
+        final Problem problem;
+        final SplittableRandom random;
+        final int[] assignment;     // Staff index per position, -1 when unfilled
+        final int[] slotCounts;     // Shifts per staff per week slot
+        final int[] weeklyCounts;   // Shifts per staff
+        final int[] speakerCounts;  // Assigned language speakers per requirement
+        int penalty;
+
+        Search(Problem problem, SplittableRandom random) {
+            this.problem = problem;
+            this.random = random;
+            this.assignment = new int[problem.positionRequirement.length];
+            this.slotCounts = new int[staff.size() * SLOTS];
+            this.weeklyCounts = new int[staff.size()];
+            this.speakerCounts = new int[problem.requirements.size()];
+            Arrays.fill(assignment, -1);
+            for (int r = 0; r < problem.requirements.size(); r++) {
+                if (problem.speakers[r] != null) {
+                    penalty += LANGUAGE_UNMET;
+                }
+            }
+            penalty += UNFILLED * assignment.length;
+            for (int p = 0; p < assignment.length; p++) {
+                int[] pool = problem.candidates[problem.positionRequirement[p]];
+                int choice = -1;
+                int bestDelta = 0;
+                for (int attempt = 0; attempt < Math.min(pool.length, 8); attempt++) {
+                    int candidate = pool[random.nextInt(pool.length)];
+                    int delta = delta(p, candidate);
+                    if (choice < 0 || delta < bestDelta) {
+                        choice = candidate;
+                        bestDelta = delta;
+                    }
+                }
+                if (choice >= 0) {
+                    apply(p, choice, bestDelta);
+                }
+            }
+        }
+
+        void run(int iterations) {
+            for (int i = 0; i < iterations && penalty > 0; i++) {
+                int p = random.nextInt(assignment.length);
+                int[] pool = problem.candidates[problem.positionRequirement[p]];
+                if (pool.length == 0) {
+                    continue;
+                }
+                int candidate = pool[random.nextInt(pool.length)];
+                if (candidate == assignment[p]) {
+                    continue;
+                }
+                int delta = delta(p, candidate);
+                if (delta <= 0) {
+                    apply(p, candidate, delta);
+                }
+            }
+        }
+
+        // Change in penalty if position p were given to staff index `to`
+        int delta(int p, int to) {
+            int r = problem.positionRequirement[p];
+            int slot = problem.requirements.get(r).weekSlot();
+            int from = assignment[p];
+            int delta = 0;
+            if (from < 0) {
+                delta -= UNFILLED;
+            } else {
+                if (slotCounts[from * SLOTS + slot] > 1) delta -= DOUBLE_BOOKED;
+                if (weeklyCounts[from] > maxShiftsPerWeek) delta -= OVER_WEEKLY_LIMIT;
+            }
+            if (slotCounts[to * SLOTS + slot] > 0) delta += DOUBLE_BOOKED;
+            if (weeklyCounts[to] >= maxShiftsPerWeek) delta += OVER_WEEKLY_LIMIT;
+            BitSet speakers = problem.speakers[r];
+            if (speakers != null) {
+                int before = speakerCounts[r];
+                int after = before - (from >= 0 && speakers.get(from) ? 1 : 0) + (speakers.get(to) ? 1 : 0);
+                if (before == 0 && after > 0) delta -= LANGUAGE_UNMET;
+                if (before > 0 && after == 0) delta += LANGUAGE_UNMET;
+            }
+            return delta;
+        }
+
+        void apply(int p, int to, int delta) {
+            int r = problem.positionRequirement[p];
+            int slot = problem.requirements.get(r).weekSlot();
+            int from = assignment[p];
+            BitSet speakers = problem.speakers[r];
+            if (from >= 0) {
+                slotCounts[from * SLOTS + slot]--;
+                weeklyCounts[from]--;
+                if (speakers != null && speakers.get(from)) speakerCounts[r]--;
+            }
+            slotCounts[to * SLOTS + slot]++;
+            weeklyCounts[to]++;
+            if (speakers != null && speakers.get(to)) speakerCounts[r]++;
+            assignment[p] = to;
+            penalty += delta;
+        }
+
+        Roster toRoster() {
+            List<List<Staff>> assigned = new ArrayList<>();
+            for (ShiftRequirement requirement : problem.requirements) {
+                assigned.add(new ArrayList<>(requirement.getHeadcount()));
+            }
+            for (int p = 0; p < assignment.length; p++) {
+                assigned.get(problem.positionRequirement[p]).add(assignment[p] < 0 ? null : staff.get(assignment[p]));
+            }
+            return new Roster(problem.requirements, assigned, penalty);
+        }
+    }
+}
+
+// =============================================================================
+// Laboratory
+// =============================================================================
+
+enum LabFlag {
+    LOW, NORMAL, HIGH, NO_RANGE
+}
+
+class LabResult {
+    private final String patientId;
+    private final String testName;
+    private final double value;
+    private final LabFlag flag;
+
+    public LabResult(String patientId, String testName, double value, LabFlag flag) {
+        this.patientId = patientId;
+        this.testName = testName;
+        this.value = value;
+        this.flag = flag;
+    }
+
+    public String getPatientId() { return patientId; }
+    public String getTestName() { return testName; }
+    public double getValue() { return value; }
+    public LabFlag getFlag() { return flag; }
+    public boolean isAbnormal() { return flag == LabFlag.LOW || flag == LabFlag.HIGH; }
+
+    @Override
+    public String toString() {
+        return testName + " = " + value + (flag == LabFlag.NORMAL ? "" : " (" + flag + ")");
+    }
+}
+
+// Normal ranges by test name (case-insensitive), inclusive at both ends
+class ReferenceRanges {
+    private final Map<String, double[]> ranges = new ConcurrentHashMap<>();
+
+    public void setRange(String testName, double low, double high) {
+        ranges.put(testName.toLowerCase(Locale.ROOT), new double[] { low, high });
+    }
+
+    public LabFlag flag(String testName, double value) {
+        double[] range = ranges.get(testName.toLowerCase(Locale.ROOT));
+        if (range == null) {
+            return LabFlag.NO_RANGE;
+        }
+        return value < range[0] ? LabFlag.LOW : value > range[1] ? LabFlag.HIGH : LabFlag.NORMAL;
+    }
+}
 
-    public Person(String title, String givenName, String middleName, String familyName,
-                  LocalDate birthDate, Gender gender, String homeAddress, String phone) {
-        this.title = title;
-        this.givenName = givenName;
-        this.middleName = middleName;
-        this.familyName = familyName;
-        this.birthDate = birthDate;
-        this.gender = gender;
-        this.homeAddress = homeAddress;
-        this.phone = phone;
-        System.out.println("Person " + getFullName() + " created.");
+// Totals from one ingestion run
+class LabIngestReport {
+    final LongAdder files = new LongAdder();
+    final LongAdder results = new LongAdder();
+    final LongAdder abnormal = new LongAdder();
+    final LongAdder unknownPatients = new LongAdder();
+    final LongAdder malformedLines = new LongAdder();
+
+    public long getFiles() { return files.sum(); }
+    public long getResults() { return results.sum(); }
+    public long getAbnormal() { return abnormal.sum(); }
+    public long getUnknownPatients() { return unknownPatients.sum(); }
+    public long getMalformedLines() { return malformedLines.sum(); }
+
+    @Override
+    public String toString() {
+        return getFiles() + " files, " + getResults() + " results (" + getAbnormal() + " abnormal), "
+                + getUnknownPatients() + " for unknown patients, " + getMalformedLines() + " malformed lines";
     }
+}
 
-    // Getters
-    public String getTitle() { return title; }
-    public String getGivenName() { return givenName; }
-    public String getMiddleName() { return middleName; }
-    public String getFamilyName() { return familyName; }
-    public LocalDate getBirthDate() { return birthDate; } // Public getter for birthDate
-    public Gender getGender() { return gender; }
-    public String getHomeAddress() { return homeAddress; }
-    public String getPhone() { return phone; }
+// Reads analyzer result files dropped into a directory: one `patientId,testName,value`
+// per line, '#' lines ignored. Each *.csv file is memory-mapped in windows and parsed
+// straight from the mapped bytes; only the patient ID and test name become (pooled)
+// strings. Results are flagged against the reference ranges and handed to patients in
+// batches, so a patient's result list is copied once per batch rather than once per
+// result. Files are parsed in parallel and moved to a "processed" subdirectory when done.
+class LabResultIngestor {
+    static final long MAP_WINDOW = 64L * 1024 * 1024;
 
-    // Derived attribute: /name: FullName
-    public String getFullName() {
-        StringBuilder fullName = new StringBuilder();
-        if (givenName != null && !givenName.isEmpty()) fullName.append(givenName);
-        if (middleName != null && !middleName.isEmpty()) {
-            if (fullName.length() > 0) fullName.append(" ");
-            fullName.append(middleName);
+    private final PatientRegistry patients;
+    private final ReferenceRanges ranges;
+    private final int batchSize;
+
+    public LabResultIngestor(PatientRegistry patients, ReferenceRanges ranges, int batchSize) {
+        this.patients = patients;
+        this.ranges = ranges;
+        this.batchSize = batchSize;
+    }
+
+    public LabIngestReport ingest(Path dropDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dropDirectory, "*.csv")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
         }
-        if (familyName != null && !familyName.isEmpty()) {
-            if (fullName.length() > 0) fullName.append(" ");
-            fullName.append(familyName);
+        Path processed = Files.createDirectories(dropDirectory.resolve("processed"));
+        LabIngestReport report = new LabIngestReport();
+        try {
+            files.parallelStream().forEach(file -> {
+                try {
+                    ingestFile(file, report);
+                    Files.move(file, processed.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return fullName.toString();
+        return report;
     }
 
-    // Other potential methods for a Person (e.g., updateContactInfo)
+    void ingestFile(Path file, LabIngestReport report) throws IOException {
+        Map<Patient, List<LabResult>> batch = new HashMap<>();
+        int[] pending = { 0 };
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(MAP_WINDOW, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if (position + length < size) {
+                    // Stop at the last complete line; the next window starts after it
+                    while (end > 0 && buffer.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        throw new IOException(file + ": line longer than " + MAP_WINDOW + " bytes");
+                    }
+                }
+                int lineStart = 0;
+                for (int i = 0; i <= end; i++) {
+                    if (i == end || buffer.get(i) == '\n') {
+                        parseLine(buffer, lineStart, i, batch, pending, report);
+                        lineStart = i + 1;
+                    }
+                }
+                position += end;
+            }
+        }
+        flush(batch, pending);
+        report.files.increment();
+    }
+
+    private void parseLine(MappedByteBuffer buffer, int start, int end, Map<Patient, List<LabResult>> batch,
+                           int[] pending, LabIngestReport report) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (start >= end || buffer.get(start) == '#') {
+            return;
+        }
+        int firstComma = indexOf(buffer, (byte) ',', start, end);
+        int secondComma = firstComma < 0 ? -1 : indexOf(buffer, (byte) ',', firstComma + 1, end);
+        if (secondComma < 0) {
+            report.malformedLines.increment();
+            return;
+        }
+        double value = parseDecimal(buffer, secondComma + 1, end);
+        if (Double.isNaN(value)) {
+            report.malformedLines.increment();
+            return;
+        }
+        String patientId = ascii(buffer, start, firstComma);
+        Patient patient = patients.findById(patientId);
+        if (patient == null) {
+            report.unknownPatients.increment();
+            return;
+        }
+        String testName = StringPool.intern(ascii(buffer, firstComma + 1, secondComma));
+        LabResult result = new LabResult(patient.getId(), testName, value, ranges.flag(testName, value));
+        batch.computeIfAbsent(patient, p -> new ArrayList<>()).add(result);
+        report.results.increment();
+        if (result.isAbnormal()) {
+            report.abnormal.increment();
+        }
+        if (++pending[0] >= batchSize) {
+            flush(batch, pending);
+        }
+    }
+
+    private static void flush(Map<Patient, List<LabResult>> batch, int[] pending) {
+        for (Map.Entry<Patient, List<LabResult>> entry : batch.entrySet()) {
+            entry.getKey().addLabResults(entry.getValue());
+        }
+        batch.clear();
+        pending[0] = 0;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte target, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String ascii(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+
+    // [-]digits[.digits], surrounding spaces allowed; NaN when it is anything else
+    private static double parseDecimal(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') start++;
+        while (end > start && buffer.get(end - 1) == ' ') end--;
+        boolean negative = start < end && buffer.get(start) == '-';
+        if (negative) start++;
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b >= '0' && b <= '9' && digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) scale++;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = mantissa / Math.pow(10, scale);
+        return negative ? -value : value;
+    }
 }
 
-class Hospital {
-    private String name; // {id}
-    private String address; // /address - derived from name or separate
-    private String phone; // Phone
+// =============================================================================
+// Equipment Maintenance
+// =============================================================================
 
-    // Composition: Hospital has Department (1-to-1 as per diagram, though unusual for real hospitals)
-    private Department department;
+enum DeviceStatus {
+    IN_SERVICE, FAULTY
+}
 
-    // Association: Hospital employs Persons (a broader list, including staff and possibly patients if they are considered "members" of the hospital system)
-    private List<Person> employedPersons;
+class MedicalDevice {
+    private final String id;
+    private final String name;
+    private final String location;
+    private final int serviceIntervalDays;
+    private volatile LocalDate lastServiced;
+    private volatile DeviceStatus status = DeviceStatus.IN_SERVICE;
+    MaintenanceTask pendingService; // Guarded by the scheduler; older queued service tasks are stale
+    MaintenanceTask pendingRepair;
 
-    public Hospital(String name, String address, String phone) {
+    public MedicalDevice(String id, String name, String location, int serviceIntervalDays, LocalDate lastServiced) {
+        this.id = id;
         this.name = name;
-        this.address = address;
-        this.phone = phone;
-        this.employedPersons = new ArrayList<>();
-        System.out.println("Hospital '" + name + "' created.");
+        this.location = location;
+        this.serviceIntervalDays = serviceIntervalDays;
+        this.lastServiced = lastServiced;
     }
 
-    // Getters
+    public String getId() { return id; }
     public String getName() { return name; }
-    public String getAddress() { return address; }
-    public String getPhone() { return phone; }
-    public Department getDepartment() { return department; }
-    public List<Person> getEmployedPersons() { return new ArrayList<>(employedPersons); }
+    public String getLocation() { return location; }
+    public int getServiceIntervalDays() { return serviceIntervalDays; }
+    public LocalDate getLastServiced() { return lastServiced; }
+    public DeviceStatus getStatus() { return status; }
+    public LocalDate getNextServiceDue() { return lastServiced.plusDays(serviceIntervalDays); }
 
-    // Setters for composition
-    public void setDepartment(Department department) {
-        if (this.department != null) {
-            System.out.println("Warning: Hospital already has a department. Replacing.");
+    void recordService(LocalDate date) { this.lastServiced = date; }
+    void setStatus(DeviceStatus status) { this.status = status; }
+
+    @Override
+    public String toString() { return name + " (" + id + ", " + location + ")"; }
+}
+
+class MaintenanceTask implements Comparable<MaintenanceTask> {
+    enum Kind { REPAIR, SERVICE } // Declaration order is priority order on the same day
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final MedicalDevice device;
+    private final LocalDate due;
+    private final Kind kind;
+    private final long sequence = SEQUENCE.incrementAndGet();
+
+    public MaintenanceTask(MedicalDevice device, LocalDate due, Kind kind) {
+        this.device = device;
+        this.due = due;
+        this.kind = kind;
+    }
+
+    public MedicalDevice getDevice() { return device; }
+    public LocalDate getDue() { return due; }
+    public Kind getKind() { return kind; }
+
+    @Override
+    public int compareTo(MaintenanceTask other) {
+        int byDate = due.compareTo(other.due);
+        if (byDate != 0) return byDate;
+        int byKind = kind.compareTo(other.kind);
+        return byKind != 0 ? byKind : Long.compare(sequence, other.sequence);
+    }
+
+    @Override
+    public String toString() { return kind + " " + device + " due " + due; }
+}
+
+// Devices and their upcoming maintenance in one time-ordered PriorityQueue, so
+// registering, rescheduling and taking the next due task are O(log n) and nothing ever
+// scans the whole fleet. A device keeps a reference to its live tasks; a task that has
+// been superseded is left in the queue and dropped when it reaches the head. Due work
+// goes to idle technicians, who stay busy until released.
+class MaintenanceScheduler {
+    private final Map<String, MedicalDevice> devices = new ConcurrentHashMap<>();
+    private final PriorityQueue<MaintenanceTask> queue = new PriorityQueue<>(); // Guarded by this
+    private final ArrayDeque<Technician> idle = new ArrayDeque<>();            // Guarded by this
+    private final Set<Technician> busy = new LinkedHashSet<>();                // Guarded by this
+
+    public synchronized void register(MedicalDevice device) {
+        if (devices.putIfAbsent(device.getId(), device) == null) {
+            scheduleService(device);
         }
-        this.department = department;
-        System.out.println("Department linked to Hospital " + name);
     }
 
-    // Business Methods
-    public void addEmployee(Person person) {
-        if (!employedPersons.contains(person)) {
-            employedPersons.add(person);
-            System.out.println(person.getFullName() + " added as an employee/member to " + name);
+    public MedicalDevice getDevice(String id) { return devices.get(id); }
+    public int getDeviceCount() { return devices.size(); }
+    public synchronized int getQueuedTasks() { return queue.size(); }
+
+    public synchronized void addTechnician(Technician technician) {
+        if (!idle.contains(technician) && !busy.contains(technician)) {
+            idle.addLast(technician);
         }
     }
 
-    public void removeEmployee(Person person) {
-        if (employedPersons.remove(person)) {
-            System.out.println(person.getFullName() + " removed from " + name + " employees/members.");
+    public synchronized void release(Technician technician) {
+        if (busy.remove(technician)) {
+            idle.addLast(technician);
         }
     }
 
-    public void displayHospitalInfo() {
-        System.out.println("\n--- Hospital Info: " + name + " ---");
-        System.out.println("Address: " + address);
-        System.out.println("Phone: " + phone);
-        System.out.println("Number of employees/members: " + employedPersons.size());
-        if (department != null) {
-            System.out.println("Main Department: " + department.getName());
+    // Marks the device faulty and queues a repair ahead of any service due the same day
+    public synchronized void reportFault(MedicalDevice device, LocalDate date) {
+        device.setStatus(DeviceStatus.FAULTY);
+        if (device.pendingRepair == null) {
+            device.pendingRepair = new MaintenanceTask(device, date, MaintenanceTask.Kind.REPAIR);
+            queue.add(device.pendingRepair);
         }
-        System.out.println("------------------------------");
+    }
+
+    // Hands every task due by `today` to an idle technician, earliest first, until
+    // either runs out; returns the tasks that were started.
+    public synchronized List<MaintenanceTask> dispatchDue(LocalDate today) {
+        List<MaintenanceTask> started = new ArrayList<>();
+        while (!idle.isEmpty() && !queue.isEmpty() && !queue.peek().getDue().isAfter(today)) {
+            MaintenanceTask task = queue.poll();
+            MedicalDevice device = task.getDevice();
+            boolean live = task.getKind() == MaintenanceTask.Kind.REPAIR ? device.pendingRepair == task : device.pendingService == task;
+            if (!live) {
+                continue;
+            }
+            Technician technician = idle.pollFirst();
+            busy.add(technician);
+            if (task.getKind() == MaintenanceTask.Kind.REPAIR) {
+                device.pendingRepair = null;
+                technician.fixDevice(device);
+            } else {
+                technician.performMaintenance(device, today);
+            }
+            // A repair also counts as a service, so either way the next service moves out
+            device.recordService(today);
+            scheduleService(device);
+            started.add(task);
+        }
+        return started;
+    }
+
+    private void scheduleService(MedicalDevice device) {
+        device.pendingService = new MaintenanceTask(device, device.getNextServiceDue(), MaintenanceTask.Kind.SERVICE);
+        queue.add(device.pendingService);
     }
 }
 
-class Department {
-    private String name; // Assuming a name for the department
+// =============================================================================
+// Billing
+// =============================================================================
 
-    public Department(String name) {
-        this.name = name;
-        System.out.println("Department '" + name + "' created.");
+enum ChargeType {
+    PRESCRIPTION, PROCEDURE, STAY_DAY
+}
+
+class ChargeEvent {
+    private final String patientId;
+    private final ChargeType type;
+    private final String description;
+    private final long cents;
+    private final LocalDate date;
+
+    public ChargeEvent(String patientId, ChargeType type, String description, long cents, LocalDate date) {
+        this.patientId = patientId;
+        this.type = type;
+        this.description = description;
+        this.cents = cents;
+        this.date = date;
     }
 
-    public String getName() { return name; }
+    public String getPatientId() { return patientId; }
+    public ChargeType getType() { return type; }
+    public String getDescription() { return description; }
+    public long getCents() { return cents; }
+    public LocalDate getDate() { return date; }
+
+    @Override
+    public String toString() { return date + " " + type + " " + description + " " + Invoice.formatCents(cents); }
+}
+
+class Invoice {
+    private final String patientId;
+    private final LocalDate date;
+    private final List<ChargeEvent> lines;
+    private final long totalCents;
+
+    public Invoice(String patientId, LocalDate date, List<ChargeEvent> lines) {
+        this.patientId = patientId;
+        this.date = date;
+        this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+        long total = 0;
+        for (ChargeEvent line : lines) {
+            total += line.getCents();
+        }
+        this.totalCents = total;
+    }
+
+    public String getPatientId() { return patientId; }
+    public LocalDate getDate() { return date; }
+    public List<ChargeEvent> getLines() { return lines; }
+    public long getTotalCents() { return totalCents; }
+
+    static String formatCents(long cents) {
+        return (cents < 0 ? "-$" : "$") + Math.abs(cents) / 100 + "." + String.format("%02d", Math.abs(cents) % 100);
+    }
+
+    @Override
+    public String toString() { return "Invoice " + patientId + " " + date + ": " + lines.size() + " lines, " + formatCents(totalCents); }
+}
+
+// Chargeable events collected per patient as care happens (prescriptions, assisted
+// procedures, days of stay), turned into invoices on demand or by the end-of-day
+// batch. The batch invoices patients in parallel and appends each finished invoice,
+// charges and all, to a checkpoint file and forces it to disk before moving on. A rerun
+// for the same date after a failure reads the invoices already in the checkpoint back
+// and only bills the remaining patients, so nobody is billed twice and no drained
+// charge exists only in memory. Each checkpoint line carries a CRC32 of its text, so a
+// line torn by a crash mid-append is recognised, cut off, and its patient billed again.
+class BillingEngine {
+    private final ConcurrentMap<String, ConcurrentLinkedQueue<ChargeEvent>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Long> procedurePrices = new ConcurrentHashMap<>();
+    private final long prescriptionCents;
+    private final long defaultProcedureCents;
+    private final long stayDayCents;
+
+    public BillingEngine(long prescriptionCents, long defaultProcedureCents, long stayDayCents) {
+        this.prescriptionCents = prescriptionCents;
+        this.defaultProcedureCents = defaultProcedureCents;
+        this.stayDayCents = stayDayCents;
+    }
+
+    public void setProcedurePrice(String procedure, long cents) {
+        procedurePrices.put(procedure.toLowerCase(Locale.ROOT), cents);
+    }
+
+    public void recordPrescription(Patient patient, String medication, LocalDate date) {
+        record(new ChargeEvent(patient.getId(), ChargeType.PRESCRIPTION, medication, prescriptionCents, date));
+    }
+
+    public void recordProcedure(Patient patient, String procedure, LocalDate date) {
+        long cents = procedurePrices.getOrDefault(procedure.toLowerCase(Locale.ROOT), defaultProcedureCents);
+        record(new ChargeEvent(patient.getId(), ChargeType.PROCEDURE, procedure, cents, date));
+    }
+
+    public void recordStay(Patient patient, long days, LocalDate date) {
+        if (days > 0) {
+            record(new ChargeEvent(patient.getId(), ChargeType.STAY_DAY, days + " day(s)", Math.multiplyExact(days, stayDayCents), date));
+        }
+    }
+
+    // Everything charged to the patient so far; null if there is nothing to bill. The
+    // queue is drained rather than removed, so a charge recorded meanwhile is never lost.
+    public Invoice invoice(String patientId, LocalDate date) {
+        ConcurrentLinkedQueue<ChargeEvent> charges = pending.get(patientId);
+        List<ChargeEvent> lines = new ArrayList<>();
+        for (ChargeEvent charge; charges != null && (charge = charges.poll()) != null; ) {
+            lines.add(charge);
+        }
+        return lines.isEmpty() ? null : new Invoice(patientId, date, lines);
+    }
+
+    // Invoices for the date, including any a previous interrupted run already wrote to the checkpoint
+    public List<Invoice> runEndOfDay(LocalDate date, Path checkpointFile) throws IOException {
+        List<Invoice> done = readCheckpoint(checkpointFile, date);
+        List<String> patientIds = new ArrayList<>(pending.keySet());
+        List<Invoice> invoices = Collections.synchronizedList(new ArrayList<>());
+        if (done != null) {
+            invoices.addAll(done);
+            for (Invoice invoice : done) {
+                patientIds.remove(invoice.getPatientId());
+            }
+        }
+        Collections.sort(patientIds);
+        try (FileChannel checkpoint = FileChannel.open(checkpointFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (done == null) {
+                writeLine(checkpoint, "date " + date);
+            }
+            patientIds.parallelStream().forEach(patientId -> {
+                Invoice invoice = invoice(patientId, date);
+                if (invoice == null) {
+                    return;
+                }
+                try {
+                    writeLine(checkpoint, encode(invoice));
+                } catch (UncheckedIOException e) {
+                    // Not checkpointed, so a rerun must bill these charges again
+                    pending.get(patientId).addAll(invoice.getLines());
+                    throw e;
+                }
+                invoices.add(invoice);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return invoices;
+    }
+
+    private void record(ChargeEvent event) {
+        pending.computeIfAbsent(event.getPatientId(), id -> new ConcurrentLinkedQueue<>()).add(event);
+    }
+
+    // Invoices already written for the date, or null for a fresh run. A checkpoint left
+    // by another date still holds that run's invoices, so it is never silently dropped.
+    // A torn last line (no newline, or a bad checksum) is truncated away so the rerun
+    // appends after the last complete invoice; a bad line before it is corruption.
+    private static List<Invoice> readCheckpoint(Path checkpointFile, LocalDate date) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(checkpointFile);
+        List<String> lines = new ArrayList<>();
+        int valid = 0;
+        while (valid < bytes.length) {
+            int end = valid;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            String line = end < bytes.length ? unframe(new String(bytes, valid, end - valid, StandardCharsets.UTF_8)) : null;
+            if (line == null) {
+                if (end + 1 < bytes.length) {
+                    throw new IOException(checkpointFile + " is corrupt at byte " + valid);
+                }
+                break;
+            }
+            lines.add(line);
+            valid = end + 1;
+        }
+        if (valid < bytes.length) {
+            try (FileChannel channel = FileChannel.open(checkpointFile, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        }
+        if (lines.isEmpty()) {
+            return null;
+        }
+        if (!lines.get(0).equals("date " + date)) {
+            throw new IOException(checkpointFile + " belongs to the run for " + lines.get(0).substring(5)
+                    + "; archive it before billing " + date);
+        }
+        List<Invoice> invoices = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            invoices.add(decode(line, date));
+        }
+        return invoices;
+    }
+
+    // Checksum, a space, then the text
+    private static String frame(String line) {
+        CRC32 crc = new CRC32();
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue()) + " " + line;
+    }
+
+    // The text of a framed line, or null if it does not match its checksum
+    private static String unframe(String framed) {
+        if (framed.length() < 9 || framed.charAt(8) != ' ') {
+            return null;
+        }
+        String line = framed.substring(9);
+        return frame(line).equals(framed) ? line : null;
+    }
+
+    // patientId, then one tab-separated type|cents|date|description field per charge
+    private static String encode(Invoice invoice) {
+        StringBuilder line = new StringBuilder(escape(invoice.getPatientId()));
+        for (ChargeEvent charge : invoice.getLines()) {
+            line.append('\t').append(charge.getType()).append('|').append(charge.getCents())
+                .append('|').append(charge.getDate()).append('|').append(escape(charge.getDescription()));
+        }
+        return line.toString();
+    }
+
+    private static Invoice decode(String line, LocalDate date) {
+        String[] fields = line.split("\t");
+        String patientId = unescape(fields[0]);
+        List<ChargeEvent> charges = new ArrayList<>();
+        for (int i = 1; i < fields.length; i++) {
+            String[] parts = fields[i].split("\\|", 4);
+            charges.add(new ChargeEvent(patientId, ChargeType.valueOf(parts[0]), unescape(parts[3]),
+                    Long.parseLong(parts[1]), LocalDate.parse(parts[2])));
+        }
+        return new Invoice(patientId, date, charges);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    // Appends the line, framed, and forces it to disk before returning
+    private static void writeLine(FileChannel channel, String line) {
+        ByteBuffer bytes = ByteBuffer.wrap((frame(line) + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (channel) {
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
 
 // =============================================================================
@@ -146,9 +2218,10 @@ class Patient extends Person {
     private String id; // {id}
     private LocalDate acceptedDate; // accepted
     private String sicknessHistory; // sickness: History
-    private List<String> prescriptions; // prescription[*]
-    private List<String> allergies;     // allergies[*]
-    private List<String> specialRequests; // specialRwqts[*] - corrected in Java code
+    private VersionedList<String> prescriptions; // prescription[*]
+    private VersionedList<String> allergies;     // allergies[*]
+    private VersionedList<String> specialRequests; // specialRwqts[*] - corrected in Java code
+    private VersionedList<LabResult> labResults = new VersionedList<>(null);
 
     public Patient(String title, String givenName, String middleName, String familyName,
                    LocalDate birthDate, Gender gender, String homeAddress, String phone,
@@ -158,23 +2231,35 @@ class Patient extends Person {
         this.id = id;
         this.acceptedDate = acceptedDate;
         this.sicknessHistory = sicknessHistory;
-        this.prescriptions = prescriptions != null ? new ArrayList<>(prescriptions) : new ArrayList<>();
-        this.allergies = allergies != null ? new ArrayList<>(allergies) : new ArrayList<>();
-        this.specialRequests = specialRequests != null ? new ArrayList<>(specialRequests) : new ArrayList<>();
+        this.prescriptions = new VersionedList<>(StringPool.internAll(prescriptions));
+        this.allergies = new VersionedList<>(StringPool.internAll(allergies));
+        this.specialRequests = new VersionedList<>(specialRequests);
         System.out.println("Patient " + getFullName() + " (ID: " + id + ") registered.");
     }
 
     // Getters
     public String getId() { return id; }
-    // CORRECTED LINE: Use getBirthDate() from superclass
+    // Read from the shared HospitalClock
     public int getAge() {
-        return LocalDate.now().getYear() - getBirthDate().getYear();
+        return HospitalClock.today().getYear() - getBirthDate().getYear();
     }
     public LocalDate getAcceptedDate() { return acceptedDate; }
     public String getSicknessHistory() { return sicknessHistory; }
-    public List<String> getPrescriptions() { return new ArrayList<>(prescriptions); }
-    public List<String> getAllergies() { return new ArrayList<>(allergies); }
-    public List<String> getSpecialRequests() { return new ArrayList<>(specialRequests); }
+    // Read-only snapshots; safe to share between readers and never copied per call
+    public List<String> getPrescriptions() { return prescriptions.get(); }
+    public List<String> getAllergies() { return allergies.get(); }
+    public List<String> getSpecialRequests() { return specialRequests.get(); }
+    public long getPrescriptionsVersion() { return prescriptions.getVersion(); }
+    public long getAllergiesVersion() { return allergies.getVersion(); }
+
+    public void addPrescription(String medication) { prescriptions.add(StringPool.intern(medication)); }
+    public boolean removePrescription(String medication) { return prescriptions.remove(medication); }
+    public void addAllergy(String allergy) { allergies.add(StringPool.intern(allergy)); }
+    public void addSpecialRequest(String request) { specialRequests.add(request); }
+
+    public List<LabResult> getLabResults() { return labResults.get(); }
+    // A whole batch becomes visible at once, for one copy of the list per batch
+    public void addLabResults(Collection<LabResult> results) { labResults.addAll(results); }
 
     public void displayPatientInfo() {
         System.out.println("\n--- Patient Info (ID: " + id + ") ---");
@@ -183,9 +2268,9 @@ class Patient extends Person {
         System.out.println("Age: " + getAge());
         System.out.println("Accepted Date: " + acceptedDate);
         System.out.println("Sickness: " + sicknessHistory);
-        System.out.println("Allergies: " + (allergies.isEmpty() ? "None" : String.join(", ", allergies)));
-        System.out.println("Special Requests: " + (specialRequests.isEmpty() ? "None" : String.join(", ", specialRequests)));
-        System.out.println("Prescriptions: " + (prescriptions.isEmpty() ? "None" : String.join(", ", prescriptions)));
+        System.out.println("Allergies: " + (allergies.isEmpty() ? "None" : String.join(", ", allergies.get())));
+        System.out.println("Special Requests: " + (specialRequests.isEmpty() ? "None" : String.join(", ", specialRequests.get())));
+        System.out.println("Prescriptions: " + (prescriptions.isEmpty() ? "None" : String.join(", ", prescriptions.get())));
         System.out.println("------------------------------");
     }
 }
@@ -201,17 +2286,22 @@ class Staff extends Person {
                  LocalDate joinedDate, List<String> education, List<String> certifications, List<String> languages) {
         super(title, givenName, middleName, familyName, birthDate, gender, homeAddress, phone);
         this.joinedDate = joinedDate;
-        this.education = education != null ? new ArrayList<>(education) : new ArrayList<>();
-        this.certifications = certifications != null ? new ArrayList<>(certifications) : new ArrayList<>();
-        this.languages = languages != null ? new ArrayList<>(languages) : new ArrayList<>();
+        this.education = ImmutableLists.copyOf(education);
+        this.certifications = ImmutableLists.copyOf(certifications);
+        this.languages = ImmutableLists.copyOf(languages);
         System.out.println("Staff member " + getFullName() + " joined.");
     }
 
     // Getters
     public LocalDate getJoinedDate() { return joinedDate; }
-    public List<String> getEducation() { return new ArrayList<>(education); }
-    public List<String> getCertifications() { return new ArrayList<>(certifications); }
-    public List<String> getLanguages() { return new ArrayList<>(languages); }
+    public List<String> getEducation() { return education; } // Immutable, so shared rather than copied
+    public List<String> getCertifications() { return certifications; }
+    public List<String> getLanguages() { return languages; }
+
+    private BillingEngine billingEngine; // Optional; where this staff member's chargeable work is recorded
+
+    public BillingEngine getBillingEngine() { return billingEngine; }
+    public void setBillingEngine(BillingEngine billingEngine) { this.billingEngine = billingEngine; }
 
     public void displayStaffInfo() {
         System.out.println("\n--- Staff Info: " + getFullName() + " ---");
@@ -238,6 +2328,24 @@ class OperationsStaff extends Staff {
         System.out.println(getFullName() + " is Operations Staff.");
     }
 
+    private InteractionChecker interactionChecker; // Optional; null means medications are not checked
+
+    public void setInteractionChecker(InteractionChecker interactionChecker) { this.interactionChecker = interactionChecker; }
+    public InteractionChecker getInteractionChecker() { return interactionChecker; }
+
+    // Prints and returns false when the medication conflicts with the patient's allergies or drugs
+    protected boolean clearMedication(Patient patient, String medication) {
+        if (interactionChecker == null) {
+            return true;
+        }
+        InteractionResult result = interactionChecker.check(patient, medication);
+        if (!result.isSafe()) {
+            System.out.println("Interaction alert: " + medication + " for " + patient.getFullName()
+                    + " conflicts with " + String.join(", ", result.getConflicts()));
+        }
+        return result.isSafe();
+    }
+
     // Example interaction: Operations staff can manage patient's status
     public void managePatientStatus(Patient patient, String newStatus) {
         System.out.println(this.getFullName() + " is managing " + patient.getFullName() + "'s status to: " + newStatus);
@@ -255,19 +2363,26 @@ class Doctor extends OperationsStaff {
                   List<String> specialties, List<String> locations) {
         super(title, givenName, middleName, familyName, birthDate, gender, homeAddress, phone,
               joinedDate, education, certifications, languages);
-        this.specialties = specialties != null ? new ArrayList<>(specialties) : new ArrayList<>();
-        this.locations = locations != null ? new ArrayList<>(locations) : new ArrayList<>();
+        this.specialties = ImmutableLists.copyOf(specialties);
+        this.locations = ImmutableLists.copyOf(locations);
         System.out.println("Doctor " + getFullName() + " created.");
     }
 
     // Getters
-    public List<String> getSpecialties() { return new ArrayList<>(specialties); }
-    public List<String> getLocations() { return new ArrayList<>(locations); }
+    public List<String> getSpecialties() { return specialties; } // Immutable, so shared rather than copied
+    public List<String> getLocations() { return locations; }
 
     // Example: Doctor can prescribe medication
     public void prescribeMedication(Patient patient, String medication) {
+        if (!clearMedication(patient, medication)) {
+            System.out.println("Dr. " + getFullName() + " did not prescribe " + medication + " for " + patient.getFullName());
+            return;
+        }
         System.out.println("Dr. " + getFullName() + " prescribed " + medication + " for " + patient.getFullName());
-        // patient.addPrescription(medication); // If patient had addPrescription method
+        patient.addPrescription(medication);
+        if (getBillingEngine() != null) {
+            getBillingEngine().recordPrescription(patient, medication, HospitalClock.today());
+        }
     }
 }
 
@@ -282,6 +2397,10 @@ class Nurse extends OperationsStaff {
 
     // Example: Nurse can administer medication
     public void administerMedication(Patient patient, String medication) {
+        if (!clearMedication(patient, medication)) {
+            System.out.println("Nurse " + getFullName() + " withheld " + medication + " from " + patient.getFullName());
+            return;
+        }
         System.out.println("Nurse " + getFullName() + " administered " + medication + " to " + patient.getFullName());
     }
 }
@@ -296,8 +2415,20 @@ class AdministrativeStaff extends Staff {
         System.out.println(getFullName() + " is Administrative Staff.");
     }
     // Example: Administrative staff can handle billing
-    public void handleBilling(Patient patient) {
+    public Invoice handleBilling(Patient patient) {
+        return handleBilling(patient, HospitalClock.today());
+    }
+
+    // Invoices everything charged to the patient so far, dated like the end-of-day run for
+    // that billing date; null if there is nothing to bill
+    public Invoice handleBilling(Patient patient, LocalDate date) {
         System.out.println(this.getFullName() + " is handling billing for " + patient.getFullName());
+        if (getBillingEngine() == null) {
+            return null;
+        }
+        Invoice invoice = getBillingEngine().invoice(patient.getId(), date);
+        System.out.println(invoice != null ? invoice.toString() : "Nothing to bill for " + patient.getFullName());
+        return invoice;
     }
 }
 
@@ -310,9 +2441,39 @@ class FrontDeskStaff extends AdministrativeStaff {
         System.out.println("Front Desk Staff " + getFullName() + " created.");
     }
 
+    private Department department; // The desk's department; its census counts check-ins and discharges
+
+    public Department getDepartment() { return department; }
+    public void setDepartment(Department department) { this.department = department; }
+
     // Example: Front Desk Staff can check-in patients
     public void checkInPatient(Patient patient) {
-        System.out.println(getFullName() + " checked in patient " + patient.getFullName());
+        checkInPatient(patient, HospitalClock.today());
+    }
+
+    // Counted as an admission on the given date, so readmissions land on the day they happen
+    public void checkInPatient(Patient patient, LocalDate date) {
+        if (department != null && !department.getCensus().admit(patient, date)) {
+            System.out.println(patient.getFullName() + " is already checked in to " + department.getName());
+            return;
+        }
+        System.out.println(getFullName() + " checked in patient " + patient.getFullName() + " on " + date);
+    }
+
+    // Stay days are billed from this admission's check-in date, which only the census knows
+    public void dischargePatient(Patient patient, LocalDate date) {
+        LocalDate admitted = null;
+        if (department != null) {
+            admitted = department.getCensus().discharge(patient, date);
+            if (admitted == null) {
+                System.out.println(patient.getFullName() + " is not checked in to " + department.getName());
+                return;
+            }
+        }
+        System.out.println(getFullName() + " discharged patient " + patient.getFullName() + " on " + date);
+        if (getBillingEngine() != null && admitted != null) {
+            getBillingEngine().recordStay(patient, ChronoUnit.DAYS.between(admitted, date), date);
+        }
     }
 }
 
@@ -325,9 +2486,37 @@ class Receptionist extends FrontDeskStaff {
         System.out.println("Receptionist " + getFullName() + " created.");
     }
 
+    private AppointmentScheduler scheduler; // Optional; without one appointments are not tracked
+
+    public void setScheduler(AppointmentScheduler scheduler) { this.scheduler = scheduler; }
+
     // Example: Receptionist can schedule appointments
-    public void scheduleAppointment(Patient patient, Doctor doctor, LocalDate date) {
-        System.out.println(getFullName() + " scheduled appointment for " + patient.getFullName() + " with Dr. " + doctor.getFullName() + " on " + date);
+    // Books the doctor's earliest free slot on the date; null if the day is full
+    public Appointment scheduleAppointment(Patient patient, Doctor doctor, LocalDate date) {
+        if (scheduler == null) {
+            System.out.println(getFullName() + " scheduled appointment for " + patient.getFullName() + " with Dr. " + doctor.getFullName() + " on " + date);
+            return null;
+        }
+        Appointment appointment = scheduler.bookFirstFree(patient, doctor, date);
+        if (appointment == null) {
+            System.out.println("Dr. " + doctor.getFullName() + " has no free slots on " + date + " for " + patient.getFullName());
+            return null;
+        }
+        System.out.println(getFullName() + " scheduled appointment for " + patient.getFullName() + " with Dr. " + doctor.getFullName()
+                + " on " + date + " at " + appointment.getTime());
+        return appointment;
+    }
+
+    // Books the earliest slot with any doctor of the specialty in the coming week
+    public Appointment scheduleWithSpecialist(Patient patient, String specialty, LocalDate from) {
+        Appointment appointment = scheduler == null ? null : scheduler.bookNextFree(patient, specialty, from, 7);
+        if (appointment == null) {
+            System.out.println("No " + specialty + " appointment available for " + patient.getFullName() + " from " + from);
+            return null;
+        }
+        System.out.println(getFullName() + " booked " + specialty + " for " + patient.getFullName() + " with Dr. "
+                + appointment.getDoctor().getFullName() + " on " + appointment.getDate() + " at " + appointment.getTime());
+        return appointment;
     }
 }
 
@@ -345,6 +2534,10 @@ class TechnicalStaff extends Staff {
     public void performMaintenance(String equipmentName) {
         System.out.println(this.getFullName() + " performed maintenance on " + equipmentName);
     }
+
+    public void performMaintenance(MedicalDevice device, LocalDate date) {
+        System.out.println(this.getFullName() + " performed maintenance on " + device + " on " + date);
+    }
 }
 
 class Technician extends TechnicalStaff {
@@ -360,6 +2553,11 @@ class Technician extends TechnicalStaff {
     public void fixDevice(String deviceName) {
         System.out.println(getFullName() + " fixed medical device: " + deviceName);
     }
+
+    public void fixDevice(MedicalDevice device) {
+        device.setStatus(DeviceStatus.IN_SERVICE);
+        System.out.println(getFullName() + " fixed medical device: " + device);
+    }
 }
 
 class Technologist extends TechnicalStaff {
@@ -375,6 +2573,13 @@ class Technologist extends TechnicalStaff {
     public void analyzeLabResults(String testName) {
         System.out.println(getFullName() + " analyzed lab results for: " + testName);
     }
+
+    // Ingests every result file waiting in the drop directory
+    public LabIngestReport analyzeLabResults(LabResultIngestor ingestor, Path dropDirectory) throws IOException {
+        LabIngestReport report = ingestor.ingest(dropDirectory);
+        System.out.println(getFullName() + " analyzed lab results from " + dropDirectory + ": " + report);
+        return report;
+    }
 }
 
 class SurgicalTechnologist extends Technologist {
@@ -390,6 +2595,14 @@ class SurgicalTechnologist extends Technologist {
     public void assistInSurgery(String procedureName) {
         System.out.println(getFullName() + " is assisting in surgery: " + procedureName);
     }
+
+    // Same, for a known patient, so the procedure is charged to them
+    public void assistInSurgery(Patient patient, String procedureName) {
+        System.out.println(getFullName() + " is assisting in surgery: " + procedureName + " for " + patient.getFullName());
+        if (getBillingEngine() != null) {
+            getBillingEngine().recordProcedure(patient, procedureName, HospitalClock.today());
+        }
+    }
 }
 
 
@@ -397,25 +2610,31 @@ class SurgicalTechnologist extends Technologist {
 // Main Demonstration Class
 // =============================================================================
 public class HospitalManagementDemo {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.println("--- Starting Hospital Management System Demonstration ---");
 
         // 1. Create Hospital and Department
         Hospital generalHospital = new Hospital("General City Hospital", "456 Oak St, Metropolis", "555-9876");
         Department emergencyDept = new Department("Emergency Department");
         generalHospital.setDepartment(emergencyDept);
+        Department cardiologyDept = new Department("Cardiology");
+        generalHospital.addDepartment(cardiologyDept);
+
+        HospitalNetwork network = new HospitalNetwork("Metropolis Health");
+        network.addHospital(generalHospital);
 
         // 2. Create Staff Members
         Doctor drSmith = new Doctor("Dr.", "Alice", "B.", "Smith", LocalDate.of(1975, 5, 15), Gender.FEMALE,
                 "789 Elm St", "555-1235", LocalDate.of(2000, 1, 1),
                 Arrays.asList("MD", "Residency"), Arrays.asList("Board Certified"), Arrays.asList("English"),
                 Arrays.asList("Cardiology", "Internal Medicine"), Arrays.asList("Main Clinic", "ER"));
-        generalHospital.addEmployee(drSmith);
+        generalHospital.addEmployee(drSmith, emergencyDept);
+        generalHospital.addEmployee(drSmith, cardiologyDept);
 
         Nurse nurseJones = new Nurse("Ms.", "Betty", "", "Jones", LocalDate.of(1988, 11, 20), Gender.FEMALE,
                 "101 Pine St", "555-2345", LocalDate.of(2010, 3, 10),
                 Arrays.asList("BSN"), Arrays.asList("RN License"), Arrays.asList("English", "Spanish"));
-        generalHospital.addEmployee(nurseJones);
+        generalHospital.addEmployee(nurseJones, emergencyDept);
 
         Receptionist annWhite = new Receptionist("Ms.", "Ann", "", "White", LocalDate.of(1995, 7, 7), Gender.FEMALE,
                 "202 Birch Ave", "555-3456", LocalDate.of(2018, 9, 1),
@@ -427,25 +2646,118 @@ public class HospitalManagementDemo {
                 Arrays.asList("Associate Degree"), Arrays.asList("CST"), Arrays.asList("English"));
         generalHospital.addEmployee(techMike);
 
+        Technician techRosa = new Technician("Ms.", "Rosa", "", "Diaz", LocalDate.of(1992, 9, 12), Gender.FEMALE,
+                "505 Walnut St", "555-6789", LocalDate.of(2019, 4, 15),
+                Arrays.asList("Biomedical Equipment Diploma"), Arrays.asList("CBET"), Arrays.asList("English", "Spanish"));
+        generalHospital.addEmployee(techRosa);
+
         // 3. Create a Patient
         Patient patBrown = new Patient("Mr.", "Charles", "", "Brown", LocalDate.of(1960, 1, 1), Gender.MALE,
                 "404 Maple Dr", "555-5678", "P001", LocalDate.of(2025, 5, 20),
                 "Hypertension", Arrays.asList("Lisinopril"), Arrays.asList("Penicillin"), Arrays.asList("Wheelchair access needed"));
         generalHospital.addEmployee(patBrown); // Adding patient to hospital's list of 'persons' (broadly)
+        generalHospital.registerPatient(patBrown);
 
         // Display Info
         generalHospital.displayHospitalInfo();
         drSmith.displayStaffInfo();
         patBrown.displayPatientInfo();
 
+        // Role and attribute queries answered from the staff directory's indexes
+        StaffQueries directory = generalHospital.getStaffDirectory();
+        System.out.println("\nDoctors on staff: " + directory.getByRole(Doctor.class).size());
+        System.out.println("Operations staff (doctors and nurses): " + directory.getByRole(OperationsStaff.class).size());
+        System.out.println("Cardiologists: " + directory.getDoctorsBySpecialty("Cardiology").size());
+        System.out.println("Spanish-speaking staff: " + directory.getStaffByLanguage("Spanish").size());
+
+        PatientRegistry registry = generalHospital.getPatientRegistry();
+        System.out.println("Patient P001: " + registry.findById("P001").getFullName());
+        System.out.println("Patients matching 'bro': " + registry.searchByNamePrefix("bro", 10).size());
+
+        // Medication checks shared by the doctors and nurses
+        InteractionTable interactions = new InteractionTable();
+        interactions.load(Collections.singletonMap("Penicillin", Arrays.asList("Amoxicillin")),
+                Collections.singletonMap("Lisinopril", Arrays.asList("Potassium Supplement")));
+        InteractionChecker checker = new InteractionChecker(interactions);
+        drSmith.setInteractionChecker(checker);
+        nurseJones.setInteractionChecker(checker);
+
+        // Doctor calendars: 30-minute slots from 08:00 to 18:00
+        AppointmentScheduler scheduler = new AppointmentScheduler(directory, LocalTime.of(8, 0), 30, 20);
+        annWhite.setScheduler(scheduler);
+        annWhite.setDepartment(emergencyDept);
+
+        // Chargeable work is recorded by the doctors, surgical staff and front desk
+        BillingEngine billing = new BillingEngine(2_500, 150_000, 80_000);
+        billing.setProcedurePrice("Appendectomy", 1_200_000);
+        drSmith.setBillingEngine(billing);
+        techMike.setBillingEngine(billing);
+        annWhite.setBillingEngine(billing);
+
         // 4. Simulate Interactions
         System.out.println("\n--- Simulating Interactions ---");
 
         drSmith.prescribeMedication(patBrown, "New Blood Pressure Med");
         nurseJones.administerMedication(patBrown, "Pain Reliever");
-        annWhite.checkInPatient(patBrown);
+        drSmith.prescribeMedication(patBrown, "Amoxicillin");
+        nurseJones.administerMedication(patBrown, "Potassium Supplement");
+        annWhite.checkInPatient(patBrown, patBrown.getAcceptedDate());
         annWhite.scheduleAppointment(patBrown, drSmith, LocalDate.of(2025, 6, 15));
-        techMike.assistInSurgery("Appendectomy");
+        annWhite.scheduleWithSpecialist(patBrown, "Cardiology", LocalDate.of(2025, 6, 15));
+        techMike.assistInSurgery(patBrown, "Appendectomy");
+        annWhite.dischargePatient(patBrown, LocalDate.of(2025, 5, 23));
+        annWhite.handleBilling(patBrown, LocalDate.of(2025, 5, 23));
+        billing.recordPrescription(patBrown, "Lisinopril", LocalDate.of(2025, 5, 23));
+        Path checkpoint = Files.createTempFile("billing", ".checkpoint");
+        Files.delete(checkpoint);
+        System.out.println("End-of-day billing: " + billing.runEndOfDay(LocalDate.of(2025, 5, 23), checkpoint));
+        Files.delete(checkpoint);
+
+        // Equipment due for maintenance, worked by the idle technicians
+        MaintenanceScheduler maintenance = new MaintenanceScheduler();
+        maintenance.addTechnician(techRosa);
+        MedicalDevice ventilator = new MedicalDevice("D-100", "Ventilator", "ER", 90, LocalDate.of(2025, 3, 1));
+        MedicalDevice infusionPump = new MedicalDevice("D-200", "Infusion Pump", "ER", 180, LocalDate.of(2025, 1, 10));
+        maintenance.register(ventilator);
+        maintenance.register(infusionPump);
+        maintenance.reportFault(infusionPump, LocalDate.of(2025, 6, 1));
+        maintenance.dispatchDue(LocalDate.of(2025, 6, 1));
+        maintenance.release(techRosa);
+        maintenance.dispatchDue(LocalDate.of(2025, 6, 1));
+        System.out.println("Next ventilator service: " + ventilator.getNextServiceDue());
+
+        // Lab results dropped by the analyzer
+        Path labDrop = Files.createTempDirectory("lab-drop");
+        Files.write(labDrop.resolve("analyzer-1.csv"), Arrays.asList(
+                "# patientId,testName,value", "P001,Potassium,5.9", "P001,Sodium,139", "P999,Sodium,140", "P001,Glucose,abc"),
+                StandardCharsets.US_ASCII);
+        ReferenceRanges ranges = new ReferenceRanges();
+        ranges.setRange("Potassium", 3.5, 5.1);
+        ranges.setRange("Sodium", 135, 145);
+        techMike.analyzeLabResults(new LabResultIngestor(generalHospital.getPatientRegistry(), ranges, 1000), labDrop);
+        System.out.println("Lab results for " + patBrown.getFullName() + ": " + patBrown.getLabResults());
+        Files.delete(labDrop.resolve("processed").resolve("analyzer-1.csv"));
+        Files.delete(labDrop.resolve("processed"));
+        Files.delete(labDrop);
+
+        // Monday cover for the emergency department
+        RosterSolver rosterSolver = new RosterSolver(directory.getByRole(Staff.class), 5);
+        Roster roster = rosterSolver.solve(Arrays.asList(
+                new ShiftRequirement(DayOfWeek.MONDAY, ShiftPeriod.DAY, Doctor.class, 1, "Board Certified", null, "ER"),
+                new ShiftRequirement(DayOfWeek.MONDAY, ShiftPeriod.DAY, Nurse.class, 1, "RN License", "Spanish", null),
+                new ShiftRequirement(DayOfWeek.MONDAY, ShiftPeriod.DAY, Receptionist.class, 1, null, null, null),
+                new ShiftRequirement(DayOfWeek.MONDAY, ShiftPeriod.EVENING, Staff.class, 2, null, "English", null)),
+                4, 10_000, 42L);
+        roster.displayRoster();
+
+        System.out.println("\n--- Emergency Department Census ---");
+        for (CensusDay day : emergencyDept.getCensus().dailyRollup(LocalDate.of(2025, 5, 19), LocalDate.of(2025, 5, 23))) {
+            System.out.println(day);
+        }
+        System.out.println("Cardiologists across the network: " + network.findDoctorsBySpecialty("Cardiology").size());
+        System.out.println("Patient P001 registered at: " + network.findPatientHospital("P001").getName());
+        System.out.println("Admissions in the 7 days to 2025-05-23: "
+                + emergencyDept.getCensus().admissionsInWindow(LocalDate.of(2025, 5, 23), 7));
 
         System.out.println("\n--- Hospital Management System Demonstration Complete ---");
     }
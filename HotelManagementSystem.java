@@ -1,8 +1,21 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID; // For generating unique IDs
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 // Staff.java (Base class for Doctor and Nurse)
 class Staff {
@@ -182,42 +195,290 @@ class Patient {
     }
 }
 
+// RecordEntryVisitor.java
+interface RecordEntryVisitor {
+    void visit(long timestamp, String text);
+}
+
+// RecordSegment.java
+// A run of consecutive entries of one medical record, in timestamp order. The open
+// segment holds timestamps as a long[] and the entry texts; when full it is spilled:
+// written gzip-compressed to a file and dropped from the heap, leaving only its time
+// range and file name behind. Range reads skip segments that end before or start after
+// the range, and binary-search the timestamps of a segment still in memory.
+class RecordSegment {
+    static final int CAPACITY = 256;
+
+    private long[] timestamps = new long[CAPACITY];
+    private String[] texts = new String[CAPACITY];
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private Path spillFile; // Set once spilled
+
+    public int getCount() { return count; }
+    public boolean isFull() { return count == CAPACITY; }
+    public boolean isSpilled() { return spillFile != null; }
+
+    void append(long timestamp, String text) {
+        if (count == 0) {
+            firstTimestamp = timestamp;
+        }
+        timestamps[count] = timestamp;
+        texts[count] = text;
+        lastTimestamp = timestamp;
+        count++;
+    }
+
+    // Count, then (timestamp, UTF-8 length, bytes) per entry, all gzip-compressed.
+    // The file is removed again if writing it fails.
+    void spill(Path file) throws IOException {
+        try {
+            write(file);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        spillFile = file;
+        timestamps = null;
+        texts = null;
+    }
+
+    private void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = texts[i].getBytes(StandardCharsets.UTF_8);
+                out.writeLong(timestamps[i]);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    void deleteSpillFile() throws IOException {
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    // Entries with from <= timestamp <= to, oldest first
+    void forEachBetween(long from, long to, RecordEntryVisitor visitor) throws IOException {
+        if (count == 0 || lastTimestamp < from || firstTimestamp > to) {
+            return;
+        }
+        if (spillFile == null) {
+            for (int i = lowerBound(from); i < count && timestamps[i] <= to; i++) {
+                visitor.visit(timestamps[i], texts[i]);
+            }
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(spillFile))))) {
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                long timestamp = in.readLong();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (timestamp > to) {
+                    return;
+                }
+                if (timestamp >= from) {
+                    visitor.visit(timestamp, new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
+
+// RecordSpillStore.java
+// Owns the files full RecordSegments are spilled to: a private directory, created under
+// the parent on first use and deleted with everything in it by close(). Spilled entries
+// live exactly as long as their store; they are not reloaded by a later process. Records
+// not given a store share a default one whose directory is removed when the JVM exits.
+class RecordSpillStore implements AutoCloseable {
+    private static RecordSpillStore defaultStore;
+
+    private final Path parent;
+    private Path directory; // Created on the first spill
+    private boolean closed;
+
+    public RecordSpillStore(Path parent) {
+        this.parent = parent;
+    }
+
+    static synchronized RecordSpillStore getDefault() {
+        if (defaultStore == null) {
+            RecordSpillStore store = new RecordSpillStore(Paths.get(System.getProperty("java.io.tmpdir")));
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close, "record-spill-cleanup"));
+            defaultStore = store;
+        }
+        return defaultStore;
+    }
+
+    // A new, uniquely named file for one of the record's segments
+    synchronized Path newSegmentFile(String recordId) throws IOException {
+        if (closed) {
+            throw new IOException("spill store is closed");
+        }
+        if (directory == null) {
+            directory = Files.createTempDirectory(parent, "medical-records-");
+        }
+        return Files.createTempFile(directory, recordId + "-", ".seg.gz");
+    }
+
+    // Deletes every spilled segment; records still holding them can no longer read them
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (directory == null) {
+            return;
+        }
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.out.println("Could not delete medical record spill directory " + directory + ": " + e.getMessage());
+        }
+    }
+}
+
 // MedicalRecord.java
+// Entries are stored append-only in RecordSegments with binary timestamps; the date text
+// is only produced when an entry is read. Full segments are compressed and spilled to
+// the record's RecordSpillStore, so a long-term patient's history costs one open segment
+// of heap. deleteSegments() removes a record's entries and files ahead of its store.
 class MedicalRecord {
     private String id;
     private Patient patient; // 1-to-1 relationship with Patient (has)
     private List<Treatment> treatments; // 0-to-many relationship with Treatment (includes)
-    private List<String> recordEntries; // Simple list to store textual record entries
+    private final RecordSpillStore spillStore;
+    private String creationEntry; // Null once deleteSegments() has cleared the record
+    private final long createdAt;
+    private final List<RecordSegment> segments = new ArrayList<>(); // Oldest first; only the last one is open
+    private long lastTimestamp;
 
     public MedicalRecord(String id, Patient patient) {
+        this(id, patient, RecordSpillStore.getDefault());
+    }
+
+    public MedicalRecord(String id, Patient patient, RecordSpillStore spillStore) {
         this.id = id;
         this.patient = patient;
         this.treatments = new ArrayList<>();
-        this.recordEntries = new ArrayList<>();
-        this.recordEntries.add("Medical Record created for " + patient.getName() + " on " + new Date());
+        this.spillStore = spillStore;
+        this.createdAt = System.currentTimeMillis();
+        this.creationEntry = "Medical Record created for " + patient.getName();
+        this.lastTimestamp = createdAt;
+        this.segments.add(new RecordSegment());
     }
 
     // Getters
     public String getId() { return id; }
     public Patient getPatient() { return patient; }
     public List<Treatment> getTreatments() { return treatments; }
-    public List<String> getRecordEntries() { return recordEntries; }
+    public List<String> getRecordEntries() { return getEntriesBetween(new Date(Long.MIN_VALUE), new Date(Long.MAX_VALUE)); }
+
+    public synchronized int getEntryCount() {
+        int total = creationEntry != null ? 1 : 0;
+        for (RecordSegment segment : segments) {
+            total += segment.getCount();
+        }
+        return total;
+    }
+
+    // Entries from `from` to `to` inclusive, formatted as getRecordEntries() always has:
+    // "Medical Record created for <name> on <date>", then "<date>: <entry>" per entry
+    public List<String> getEntriesBetween(Date from, Date to) {
+        List<String> entries = new ArrayList<>();
+        forEachLine(from, to, entries::add);
+        return entries;
+    }
+
+    private synchronized void forEachLine(Date from, Date to, Consumer<String> lines) {
+        if (creationEntry != null && createdAt >= from.getTime() && createdAt <= to.getTime()) {
+            lines.accept(creationEntry + " on " + new Date(createdAt));
+        }
+        forEachEntry(from, to, (timestamp, text) -> lines.accept(new Date(timestamp) + ": " + text));
+    }
+
+    // Entries added with addRecord, unformatted
+    public synchronized void forEachEntry(Date from, Date to, RecordEntryVisitor visitor) {
+        for (RecordSegment segment : segments) {
+            try {
+                segment.forEachBetween(from.getTime(), to.getTime(), visitor);
+            } catch (IOException e) {
+                System.out.println("Error reading medical record " + id + ": " + e.getMessage());
+            }
+        }
+    }
 
     // Operations
     public void addRecord(String entry) {
-        this.recordEntries.add(new Date() + ": " + entry);
+        append(entry);
         System.out.println("Added record entry for " + patient.getName() + ": " + entry);
     }
 
+    private synchronized void append(String entry) {
+        // Timestamps never go backwards within a record, which keeps segments sorted
+        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+        RecordSegment open = segments.get(segments.size() - 1);
+        if (open.isFull()) {
+            spill(open);
+            open = new RecordSegment();
+            segments.add(open);
+        }
+        open.append(timestamp, entry);
+        lastTimestamp = timestamp;
+    }
+
+    // On failure the full segment simply stays in memory
+    private void spill(RecordSegment segment) {
+        try {
+            segment.spill(spillStore.newSegmentFile(id));
+        } catch (IOException e) {
+            System.out.println("Could not spill medical record " + id + " segment: " + e.getMessage());
+        }
+    }
+
+    // Deletes every entry, including the spilled segment files; the record starts empty
+    public synchronized void deleteSegments() {
+        for (RecordSegment segment : segments) {
+            try {
+                segment.deleteSpillFile();
+            } catch (IOException e) {
+                System.out.println("Could not delete medical record " + id + " segment: " + e.getMessage());
+            }
+        }
+        segments.clear();
+        segments.add(new RecordSegment());
+        creationEntry = null;
+    }
+
     public void viewRecord() {
         System.out.println("Medical Record ID: " + id + " for Patient: " + patient.getName());
         System.out.println("--- Entries ---");
-        if (recordEntries.isEmpty()) {
+        if (getEntryCount() == 0) {
             System.out.println("No entries yet.");
         } else {
-            for (String entry : recordEntries) {
-                System.out.println(entry);
-            }
+            forEachLine(new Date(Long.MIN_VALUE), new Date(Long.MAX_VALUE), System.out::println);
         }
         System.out.println("--- Treatments ---");
         if (treatments.isEmpty()) {